@@ -0,0 +1,113 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.*;
+
+/**
+ * A blocked Bloom filter over the fingerprints of the indexed terms.
+ *
+ * The filter is split into blocks of 512 bits (one cache line). A term
+ * sets NUM_PROBES bits in a single block, chosen from one 64-bit hash, so a
+ * lookup touches one cache line. With BITS_PER_KEY bits per term about one
+ * lookup in a hundred for an absent term gets a false positive; all other
+ * absent terms are rejected without reading the dictionary.
+ */
+public class BloomFilter {
+
+    /** Number of bits per term. */
+    static final int BITS_PER_KEY = 10;
+
+    /** Number of bits set per term. */
+    static final int NUM_PROBES = 7;
+
+    /** Number of 64-bit words per block. */
+    static final int BLOCK_WORDS = 8;
+
+    final long[] bits;
+    final int numBlocks;
+
+    /**
+     * Creates an empty filter sized for <code>expectedKeys</code> terms.
+     */
+    public BloomFilter(int expectedKeys) {
+        this(new long[BLOCK_WORDS * Math.max(1, (int) ((long) expectedKeys * BITS_PER_KEY / (64 * BLOCK_WORDS)) + 1)]);
+    }
+
+    private BloomFilter(long[] bits) {
+        this.bits = bits;
+        numBlocks = bits.length / BLOCK_WORDS;
+    }
+
+    /** Adds the fingerprint of a term. */
+    public void add(long fingerprint) {
+        int base = BLOCK_WORDS * block(fingerprint);
+        long h = PerfectHash.mix(fingerprint + 1);
+        for (int i = 0; i < NUM_PROBES; i++) {
+            int bit = (int) (h >>> (9 * i)) & 511;
+            bits[base + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Returns false if the term with this fingerprint was certainly not
+     * added, and true if it may have been.
+     */
+    public boolean mightContain(long fingerprint) {
+        int base = BLOCK_WORDS * block(fingerprint);
+        long h = PerfectHash.mix(fingerprint + 1);
+        for (int i = 0; i < NUM_PROBES; i++) {
+            int bit = (int) (h >>> (9 * i)) & 511;
+            if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int block(long fingerprint) {
+        return (int) Long.remainderUnsigned(fingerprint, numBlocks);
+    }
+
+    /** Size of the filter in bits. */
+    public long numBits() {
+        return 64L * bits.length;
+    }
+
+    /**
+     * Writes the filter: the number of words followed by the words.
+     */
+    public void write(String fileName) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(bits.length);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    /**
+     * Reads a filter written by <code>write</code>. Returns null if the file
+     * doesn't exist.
+     */
+    public static BloomFilter read(String fileName) throws IOException {
+        File file = new File(fileName);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            long[] bits = new long[in.readInt()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            return new BloomFilter(bits);
+        }
+    }
+}
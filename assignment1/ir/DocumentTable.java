@@ -0,0 +1,180 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * The names and lengths of the documents of an index, stored in a binary
+ * file that is memory-mapped when the index is opened.
+ *
+ * The file starts with the first docID, the stride between the docIDs
+ * covered, the number of docIDs covered and the number of documents. Then
+ * follow a fixed-width array with the length of every docID covered (-1 if
+ * there is no such document), an array with the start of every name in the
+ * name area (plus the end of the last name), and the UTF-8 encoded names.
+ * Looking up a document reads a few bytes at a position computed from its
+ * docID, so opening the table costs the same no matter how many documents
+ * it holds.
+ *
+ * The stride is 1, except in the shards of a ShardedIndex: a shard holds
+ * every Nth docID, so its table covers only those and the stride is N.
+ */
+public class DocumentTable {
+
+    /** Size of the header: first docID, stride, number of docIDs, number of documents. */
+    static final int HEADER_BYTES = 16;
+
+    final MappedByteBuffer buffer;
+    final int firstDocID;
+    final int stride;
+    final int count;
+    final int numDocs;
+
+    /** Where the name starts array and the name area begin in the file. */
+    final int startsStart;
+    final int namesStart;
+
+    private DocumentTable(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        firstDocID = buffer.getInt(0);
+        stride = buffer.getInt(4);
+        count = buffer.getInt(8);
+        numDocs = buffer.getInt(12);
+        startsStart = HEADER_BYTES + 4 * count;
+        namesStart = startsStart + 4 * (count + 1);
+    }
+
+    /**
+     * Maps the table stored in <code>fileName</code>. Returns null if the
+     * file is empty or doesn't exist.
+     */
+    public static DocumentTable open(String fileName) throws IOException {
+        File file = new File(fileName);
+        if (file.length() < HEADER_BYTES) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new DocumentTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes a table of the given documents, whose docIDs are
+     * <code>stride</code> apart or a multiple of it. The file is written
+     * next to <code>fileName</code> and then moved in place, so a table
+     * that is still mapped keeps its contents.
+     */
+    public static void write(String fileName, SortedMap<Integer, String> names, Map<Integer, Integer> lengths,
+            int stride) throws IOException {
+        int first = names.isEmpty() ? 0 : names.firstKey();
+        int count = names.isEmpty() ? 0 : (names.lastKey() - first) / stride + 1;
+        int[] docLengths = new int[count];
+        int[] starts = new int[count + 1];
+        Arrays.fill(docLengths, -1);
+        ByteArrayOutputStream nameBytes = new ByteArrayOutputStream();
+        int next = 0;
+        for (Map.Entry<Integer, String> entry : names.entrySet()) {
+            if ((entry.getKey() - first) % stride != 0) {
+                throw new IllegalArgumentException("DocID " + entry.getKey() + " is not on a stride of " + stride);
+            }
+            int i = (entry.getKey() - first) / stride;
+            for (; next <= i; next++) {
+                starts[next] = nameBytes.size();
+            }
+            byte[] name = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            nameBytes.write(name, 0, name.length);
+            Integer length = lengths.get(entry.getKey());
+            docLengths[i] = length == null ? 0 : length;
+        }
+        for (; next <= count; next++) {
+            starts[next] = nameBytes.size();
+        }
+
+        File tmp = new File(fileName + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(first);
+            out.writeInt(stride);
+            out.writeInt(count);
+            out.writeInt(names.size());
+            for (int length : docLengths) {
+                out.writeInt(length);
+            }
+            for (int start : starts) {
+                out.writeInt(start);
+            }
+            nameBytes.writeTo(out);
+        }
+        Files.move(tmp.toPath(), Paths.get(fileName),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Returns true if the table holds a document with this docID. */
+    public boolean contains(int docID) {
+        return length(docID) >= 0;
+    }
+
+    /** Returns the slot of a docID in the arrays, or -1 if the table doesn't cover it. */
+    private int slot(int docID) {
+        int d = docID - firstDocID;
+        if (d < 0 || d % stride != 0 || d / stride >= count) {
+            return -1;
+        }
+        return d / stride;
+    }
+
+    /** Returns the name of a document, or null if there is no such document. */
+    public String name(int docID) {
+        if (!contains(docID)) {
+            return null;
+        }
+        int i = slot(docID);
+        int start = buffer.getInt(startsStart + 4 * i);
+        int end = buffer.getInt(startsStart + 4 * (i + 1));
+        byte[] name = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(namesStart + start);
+        view.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the length of a document in tokens, or -1 if there is no such document. */
+    public int length(int docID) {
+        int i = slot(docID);
+        return i < 0 ? -1 : buffer.getInt(HEADER_BYTES + 4 * i);
+    }
+
+    /** The smallest docID covered by the table. */
+    public int firstDocID() {
+        return firstDocID;
+    }
+
+    /** The largest docID covered by the table. */
+    public int lastDocID() {
+        return firstDocID + (count - 1) * stride;
+    }
+
+    /** The difference between consecutive docIDs covered by the table. */
+    public int stride() {
+        return stride;
+    }
+
+    /** Number of documents in the table. */
+    public int size() {
+        return numDocs;
+    }
+}
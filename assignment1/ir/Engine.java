@@ -23,6 +23,14 @@ public class Engine {
     Index index = new HashedIndex();
     // Assignment 1.7: Comment the line above and uncomment the next line
     // Index index = new PersistentHashedIndex();
+    // To serve lookups from memory-mapped index files, use this line instead
+    // Index index = new PersistentHashedIndex(true);
+    // To add the directories given with -d as a new segment next to the
+    // segments already on disk, use this line instead
+    // Index index = new SegmentedIndex();
+    // To split the index into one shard per processor and search the
+    // shards in parallel, use this line instead
+    // Index index = new ShardedIndex();
 
     /** The indexer creating the search index. */
     Indexer indexer;
@@ -61,6 +69,9 @@ public class Engine {
     /** For persistent indexes, we might not need to do any indexing. */
     boolean is_indexing = true;
 
+    /** Memory budget in megabytes for indexing into a persistent index (0 = no limit). */
+    long memory_budget = 0;
+
     /* ----------------------------------------------- */
 
     /**
@@ -70,6 +81,7 @@ public class Engine {
     public Engine(String[] args) {
         decodeArgs(args);
         indexer = new Indexer(index, kgIndex, patterns_file);
+        indexer.memoryBudget = memory_budget * 1024 * 1024;
         searcher = new Searcher(index, kgIndex);
         gui = new SearchGUI(this);
         gui.init();
@@ -124,6 +136,11 @@ public class Engine {
                 if (i < args.length) {
                     rank_file = args[i++];
                 }
+            } else if ("-mem".equals(args[i])) {
+                i++;
+                if (i < args.length) {
+                    memory_budget = Long.parseLong(args[i++]);
+                }
             } else if ("-ni".equals(args[i])) {
                 i++;
                 is_indexing = false;
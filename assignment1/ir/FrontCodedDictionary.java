@@ -0,0 +1,275 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A sorted term dictionary on disk, stored in front-coded blocks.
+ *
+ * Terms are written in sorted order in blocks of BLOCK_SIZE terms. The
+ * first term of a block is stored in full; every other term is stored as
+ * the length of the prefix it shares with the previous term plus the rest
+ * of the term. Each term is followed by the data pointer and the size of
+ * its postings list. After the blocks comes the block index: the first
+ * term and the file position of every block. The last 8 bytes of the file
+ * point to the block index.
+ *
+ * Only the block index is kept in memory. A lookup binary searches it and
+ * then decodes a single block, so exact lookups, seeking to the first term
+ * at or after a given string, and iterating over all terms with a given
+ * prefix cost O(log n) plus the number of terms visited.
+ */
+public class FrontCodedDictionary {
+
+    /** Number of terms per block. */
+    static final int BLOCK_SIZE = 16;
+
+    /** The dictionary file. */
+    RandomAccessFile file;
+
+    /** The first term of every block. */
+    String[] firstTerms = new String[0];
+
+    /** The position of every block in the file, plus the position of the block index. */
+    long[] blockStarts = new long[] { 0L };
+
+    /**
+     * Opens the dictionary stored in <code>fileName</code>. If the file is
+     * empty or doesn't exist, the dictionary is empty.
+     */
+    public FrontCodedDictionary(String fileName) throws IOException {
+        file = new RandomAccessFile(fileName, "rw");
+        if (file.length() >= 8) {
+            readBlockIndex();
+        }
+    }
+
+    /**
+     * Writes a dictionary. The terms must be sorted, and the pointers and
+     * sizes of their postings lists are given in the same order.
+     */
+    public static void write(String fileName, String[] terms, long[] pointers, int[] sizes) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            int numBlocks = (terms.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            long[] starts = new long[numBlocks];
+            ByteBuffer buf = ByteBuffer.allocate(1024);
+            long position = 0;
+            for (int b = 0; b < numBlocks; b++) {
+                starts[b] = position;
+                String previous = "";
+                for (int i = b * BLOCK_SIZE; i < Math.min(terms.length, (b + 1) * BLOCK_SIZE); i++) {
+                    int shared = sharedPrefix(previous, terms[i]);
+                    byte[] suffix = terms[i].substring(shared).getBytes(StandardCharsets.UTF_8);
+                    if (buf.capacity() < suffix.length + 4 * PostingsCodec.MAX_VINT_BYTES) {
+                        buf = ByteBuffer.allocate(2 * suffix.length + 4 * PostingsCodec.MAX_VINT_BYTES);
+                    }
+                    buf.clear();
+                    PostingsCodec.writeVInt(buf, shared);
+                    PostingsCodec.writeVInt(buf, suffix.length);
+                    buf.put(suffix);
+                    writeVLong(buf, pointers[i]);
+                    PostingsCodec.writeVInt(buf, sizes[i]);
+                    out.write(buf.array(), 0, buf.position());
+                    position += buf.position();
+                    previous = terms[i];
+                }
+            }
+            long indexStart = position;
+            out.writeInt(numBlocks);
+            for (int b = 0; b < numBlocks; b++) {
+                out.writeUTF(terms[b * BLOCK_SIZE]);
+                out.writeLong(starts[b]);
+            }
+            out.writeLong(indexStart);
+        }
+    }
+
+    /**
+     * Reads the block index from the end of the file.
+     */
+    private void readBlockIndex() throws IOException {
+        file.seek(file.length() - 8);
+        long indexStart = file.readLong();
+        byte[] blockIndex = new byte[(int) (file.length() - 8 - indexStart)];
+        file.seek(indexStart);
+        file.readFully(blockIndex);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(blockIndex));
+        int numBlocks = in.readInt();
+        firstTerms = new String[numBlocks];
+        blockStarts = new long[numBlocks + 1];
+        for (int b = 0; b < numBlocks; b++) {
+            firstTerms[b] = in.readUTF();
+            blockStarts[b] = in.readLong();
+        }
+        blockStarts[numBlocks] = indexStart;
+    }
+
+    /** Closes the dictionary file. */
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /** Number of blocks in the dictionary. */
+    public int numBlocks() {
+        return firstTerms.length;
+    }
+
+    /**
+     * Returns a cursor before the first term of the dictionary.
+     */
+    public Cursor cursor() {
+        return new Cursor(0);
+    }
+
+    /**
+     * Returns the entry for a term, or null if the term is not in the dictionary.
+     */
+    public Cursor lookup(String term) throws IOException {
+        Cursor cursor = ceiling(term);
+        if (cursor != null && cursor.term.equals(term)) {
+            return cursor;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a cursor on the first term that is greater than or equal to
+     * <code>term</code>, or null if there is no such term.
+     */
+    public Cursor ceiling(String term) throws IOException {
+        if (firstTerms.length == 0) {
+            return null;
+        }
+        int b = Arrays.binarySearch(firstTerms, term);
+        if (b < 0) {
+            // The term sorts inside the block before the insertion point
+            b = Math.max(0, -b - 2);
+        }
+        Cursor cursor = new Cursor(b);
+        while (cursor.next()) {
+            if (cursor.term.compareTo(term) >= 0) {
+                return cursor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all terms that start with <code>prefix</code>, in sorted order.
+     */
+    public ArrayList<String> termsWithPrefix(String prefix) throws IOException {
+        ArrayList<String> terms = new ArrayList<String>();
+        Cursor cursor = ceiling(prefix);
+        while (cursor != null && cursor.term.startsWith(prefix)) {
+            terms.add(cursor.term);
+            if (!cursor.next()) {
+                break;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Iterates over the dictionary in sorted order, starting at a block. The
+     * current term is only valid after <code>next</code> has returned true.
+     */
+    public class Cursor {
+        int block;
+        ByteBuffer data;
+        String term = "";
+        long pointer;
+        int size;
+
+        Cursor(int block) {
+            this.block = block - 1;
+            data = ByteBuffer.allocate(0);
+        }
+
+        /** Moves to the next term. Returns false when there are no more terms. */
+        public boolean next() throws IOException {
+            if (!data.hasRemaining()) {
+                block++;
+                if (block >= firstTerms.length) {
+                    return false;
+                }
+                data = readBlock(block);
+                term = "";
+            }
+            int shared = PostingsCodec.readVInt(data);
+            byte[] suffix = new byte[PostingsCodec.readVInt(data)];
+            data.get(suffix);
+            term = term.substring(0, shared) + new String(suffix, StandardCharsets.UTF_8);
+            pointer = readVLong(data);
+            size = PostingsCodec.readVInt(data);
+            return true;
+        }
+
+        public String term() {
+            return term;
+        }
+
+        public long pointer() {
+            return pointer;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Reads all bytes of a block.
+     */
+    private ByteBuffer readBlock(int b) throws IOException {
+        byte[] block = new byte[(int) (blockStarts[b + 1] - blockStarts[b])];
+        synchronized (file) {
+            file.seek(blockStarts[b]);
+            file.readFully(block);
+        }
+        return ByteBuffer.wrap(block);
+    }
+
+    /**
+     * Length of the common prefix of two terms, never splitting a surrogate pair.
+     */
+    static int sharedPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (i > 0 && Character.isHighSurrogate(a.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+
+    static void writeVLong(ByteBuffer buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    static long readVLong(ByteBuffer buf) {
+        byte b = buf.get();
+        long value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+        }
+        return value;
+    }
+}
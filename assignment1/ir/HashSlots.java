@@ -0,0 +1,98 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+/**
+ * Keeps track of which slots of the on-disk dictionary hash table are
+ * taken while the dictionary is written.
+ *
+ * Occupancy is a bitset with one bit per slot, so checking or taking a
+ * slot never depends on how many terms have been placed before. The
+ * number of probes needed to place each group of terms is collected in
+ * a histogram so that the quality of the hash function can be inspected
+ * afterwards.
+ */
+public class HashSlots {
+
+    /** Probe lengths at or above this value share the last histogram bucket. */
+    static final int MAX_PROBE_BUCKET = 16;
+
+    /** Number of slots in the table. */
+    final long size;
+
+    /** One bit per slot, set when the slot is taken. */
+    final long[] bits;
+
+    /** Number of placements that needed exactly i extra probes. */
+    final long[] probeLengths = new long[MAX_PROBE_BUCKET + 1];
+
+    /** Number of slots taken so far. */
+    long used = 0;
+
+    /** The longest probe sequence seen so far. */
+    long maxProbeLength = 0;
+
+    public HashSlots(long size) {
+        this.size = size;
+        bits = new long[(int) ((size + 63) / 64)];
+    }
+
+    /** Returns true if the slot is taken. */
+    public boolean isUsed(long slot) {
+        return (bits[(int) (slot >>> 6)] & (1L << slot)) != 0;
+    }
+
+    /** Marks a free slot as taken. */
+    public void take(long slot) {
+        if (isUsed(slot)) {
+            throw new IllegalStateException("Slot " + slot + " of the dictionary is already taken");
+        }
+        bits[(int) (slot >>> 6)] |= 1L << slot;
+        used++;
+    }
+
+    /** Records that a placement needed <code>probes</code> extra probes. */
+    public void recordProbes(long probes) {
+        probeLengths[(int) Math.min(probes, MAX_PROBE_BUCKET)]++;
+        maxProbeLength = Math.max(maxProbeLength, probes);
+    }
+
+    /** Number of slots taken so far. */
+    public long used() {
+        return used;
+    }
+
+    /** Fraction of the slots that are taken. */
+    public double loadFactor() {
+        return (double) used / size;
+    }
+
+    /** Number of placements that did not succeed at the first probe. */
+    public long collisions() {
+        long placements = 0;
+        for (long count : probeLengths) {
+            placements += count;
+        }
+        return placements - probeLengths[0];
+    }
+
+    /**
+     * Prints the load factor and the probe length distribution.
+     */
+    public void printStatistics() {
+        System.err.println(String.format("Dictionary: %d of %d slots used, load factor %.3f, longest probe %d",
+                used, size, loadFactor(), maxProbeLength));
+        StringBuilder sb = new StringBuilder("Probe lengths:");
+        for (int i = 0; i <= MAX_PROBE_BUCKET; i++) {
+            if (probeLengths[i] > 0) {
+                sb.append(' ').append(i).append(i == MAX_PROBE_BUCKET ? "+" : "").append('=').append(probeLengths[i]);
+            }
+        }
+        System.err.println(sb.toString());
+    }
+}
@@ -31,5 +31,16 @@ public interface Index {
     /** This method is called on exit. */
     public void cleanup();
 
+    /** Returns the name of a document. */
+    public default String docName( int docID ) {
+        return docNames.get( docID );
+    }
+
+    /** Returns the length of a document, in tokens. */
+    public default int docLength( int docID ) {
+        Integer length = docLengths.get( docID );
+        return length == null ? 0 : length;
+    }
+
 }
 
@@ -0,0 +1,96 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A sorted block of the inverted index, written to disk during single-pass
+ * in-memory indexing (SPIMI) when the main-memory index grows too large.
+ *
+ * A block file starts with the number of terms. Then follows, for every term
+ * in sorted order, the term itself, the length of its encoded postings list
+ * and the postings list in the format of PostingsCodec.
+ */
+public class IndexBlock {
+
+    /**
+     * Writes the postings lists of a main-memory index to a block file, in
+     * sorted term order.
+     */
+    public static void write(String fileName, Map<String, PostingsList> index) throws IOException {
+        String[] terms = index.keySet().toArray(new String[index.size()]);
+        Arrays.sort(terms);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(terms.length);
+            for (String term : terms) {
+                ByteBuffer data = PostingsCodec.encode(index.get(term));
+                out.writeUTF(term);
+                out.writeInt(data.remaining());
+                out.write(data.array(), data.position(), data.remaining());
+            }
+        }
+    }
+
+    /**
+     * Reads a block file one term at a time. The number of a reader is the
+     * number of its block; earlier blocks hold smaller docIDs.
+     */
+    public static class Reader extends SortedTermReader {
+
+        final DataInputStream in;
+
+        /** Number of terms not read yet. */
+        int remaining;
+
+        /** The encoded postings list of the current term. */
+        byte[] data = new byte[0];
+
+        /** Length of the encoded postings list of the current term. */
+        int size;
+
+        public Reader(String fileName, int number) throws IOException {
+            super(number);
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+            remaining = in.readInt();
+        }
+
+        /**
+         * Moves to the next term. Returns false at the end of the block.
+         */
+        public boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            term = in.readUTF();
+            size = in.readInt();
+            if (data.length < size) {
+                data = new byte[size];
+            }
+            in.readFully(data, 0, size);
+            return true;
+        }
+
+        /**
+         * Returns the postings list of the current term. The buffer is reused
+         * for the next term, so the list gets its own copy of the positions.
+         */
+        public PostingsList postings() {
+            return PostingsCodec.decode(ByteBuffer.wrap(Arrays.copyOf(data, size)));
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
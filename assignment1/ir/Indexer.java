@@ -28,6 +28,13 @@ public class Indexer {
     /** The patterns matching non-standard words (e-mail addresses, etc.) */
     String patterns_file;
 
+    /**
+     * Memory budget in bytes for the main-memory part of a persistent index.
+     * When it is exceeded, the index is flushed to disk as a sorted block.
+     * Zero means no limit.
+     */
+    long memoryBudget = 0L;
+
     /* ----------------------------------------------- */
 
     /** Constructor */
@@ -35,6 +42,10 @@ public class Indexer {
         this.index = index;
         this.kgIndex = kgIndex;
         this.patterns_file = patterns_file;
+        // New documents are numbered after those already in the segments
+        if (index instanceof SegmentedIndex) {
+            lastDocID = ((SegmentedIndex) index).nextDocID();
+        }
     }
 
     /** Generates a new document identifier as an integer. */
@@ -74,6 +85,7 @@ public class Indexer {
                         index.docNames.put(docID, f.getPath());
                         index.docLengths.put(docID, offset);
                         reader.close();
+                        flushIfNeeded();
                     } catch (IOException e) {
                         System.err.println("Warning: IOException during indexing.");
                     }
@@ -82,6 +94,32 @@ public class Indexer {
         }
     }
 
+    /**
+     * Flushes a persistent index to disk as a sorted block if it has grown
+     * beyond the memory budget. Called between documents.
+     */
+    private void flushIfNeeded() throws IOException {
+        if (memoryBudget > 0 && index instanceof PersistentHashedIndex) {
+            PersistentHashedIndex persistentIndex = (PersistentHashedIndex) index;
+            if (persistentIndex.estimatedMemory() > memoryBudget) {
+                persistentIndex.flushBlock();
+            }
+        } else if (memoryBudget > 0 && index instanceof ShardedIndex) {
+            // The shards share the budget
+            PersistentHashedIndex[] shards = ((ShardedIndex) index).shards;
+            for (PersistentHashedIndex shard : shards) {
+                if (shard.estimatedMemory() > memoryBudget / shards.length) {
+                    shard.flushBlock();
+                }
+            }
+        } else if (memoryBudget > 0 && index instanceof SegmentedIndex) {
+            PersistentHashedIndex openSegment = ((SegmentedIndex) index).openSegment;
+            if (openSegment != null && openSegment.estimatedMemory() > memoryBudget) {
+                openSegment.flushBlock();
+            }
+        }
+    }
+
     /* ----------------------------------------------- */
 
     /**
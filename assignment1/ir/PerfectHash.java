@@ -0,0 +1,176 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.util.Arrays;
+
+/**
+ * A minimal perfect hash function over a fixed set of terms, built with
+ * the hash-and-displace method.
+ *
+ * Every term is first reduced to a 64-bit fingerprint. The fingerprints are
+ * spread over a number of buckets, and for every bucket a seed is searched
+ * for that sends all the bucket's fingerprints to distinct free slots. The
+ * biggest buckets are placed first, while most of the table is still free.
+ * Buckets with a single term are placed last, directly in a free slot, whose
+ * number is stored as a negative seed. With n terms the table has exactly n
+ * slots, and finding the slot of a term only needs the seed of its bucket.
+ */
+public class PerfectHash {
+
+    /** Average number of terms per bucket. */
+    static final int BUCKET_SIZE = 4;
+
+    /** Give up if a bucket cannot be placed with this many seeds. */
+    static final int MAX_SEED = 1 << 24;
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    /** Number of slots, equal to the number of terms. */
+    final int size;
+
+    /** The seed chosen for each bucket. */
+    final int[] seeds;
+
+    public PerfectHash(int size, int[] seeds) {
+        this.size = size;
+        this.seeds = seeds;
+    }
+
+    /**
+     * Builds a perfect hash function for the given fingerprints, which
+     * must be distinct. The number of seeds tried for every bucket is
+     * recorded in <code>slots</code>.
+     */
+    public static PerfectHash build(long[] fingerprints, HashSlots slots) {
+        int n = fingerprints.length;
+        long[] sorted = fingerprints.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < n; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                throw new IllegalStateException("Two terms have the same fingerprint " + sorted[i]);
+            }
+        }
+
+        int numBuckets = Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE);
+        PerfectHash mph = new PerfectHash(n, new int[numBuckets]);
+
+        // Group the keys by bucket: bucketStart[b] .. bucketStart[b+1] in 'members'
+        int[] bucketStart = new int[numBuckets + 1];
+        for (long fp : fingerprints) {
+            bucketStart[mph.bucket(fp) + 1]++;
+        }
+        int largest = 0;
+        for (int b = 0; b < numBuckets; b++) {
+            largest = Math.max(largest, bucketStart[b + 1]);
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        long[] members = new long[n];
+        int[] fill = Arrays.copyOf(bucketStart, numBuckets);
+        for (long fp : fingerprints) {
+            members[fill[mph.bucket(fp)]++] = fp;
+        }
+
+        // Place the buckets in order of decreasing size
+        long[] placed = new long[largest];
+        for (int bucketSize = largest; bucketSize > 1; bucketSize--) {
+            for (int b = 0; b < numBuckets; b++) {
+                if (bucketStart[b + 1] - bucketStart[b] != bucketSize) {
+                    continue;
+                }
+                int seed = 0;
+                while (!fits(mph, members, bucketStart[b], bucketSize, seed, slots, placed)) {
+                    seed++;
+                    if (seed == MAX_SEED) {
+                        throw new IllegalStateException("Could not place bucket " + b + " of the perfect hash");
+                    }
+                }
+                for (int i = 0; i < bucketSize; i++) {
+                    slots.take(placed[i]);
+                }
+                slots.recordProbes(seed);
+                mph.seeds[b] = seed;
+            }
+        }
+        long free = 0;
+        for (int b = 0; b < numBuckets; b++) {
+            if (bucketStart[b + 1] - bucketStart[b] == 1) {
+                while (slots.isUsed(free)) {
+                    free++;
+                }
+                slots.take(free);
+                slots.recordProbes(0);
+                mph.seeds[b] = (int) (-free - 1);
+            }
+        }
+        return mph;
+    }
+
+    /**
+     * Checks whether all keys of a bucket go to distinct free slots with the
+     * given seed. The slots are left in <code>placed</code>.
+     */
+    private static boolean fits(PerfectHash mph, long[] members, int start, int count, int seed,
+            HashSlots slots, long[] placed) {
+        for (int i = 0; i < count; i++) {
+            long slot = mph.slot(members[start + i], seed);
+            if (slots.isUsed(slot)) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (placed[j] == slot) {
+                    return false;
+                }
+            }
+            placed[i] = slot;
+        }
+        return true;
+    }
+
+    /** Returns the bucket of a fingerprint. */
+    int bucket(long fingerprint) {
+        return (int) Long.remainderUnsigned(mix(fingerprint), seeds.length);
+    }
+
+    /** Returns the slot of a fingerprint when its bucket uses <code>seed</code>. */
+    long slot(long fingerprint, int seed) {
+        return Long.remainderUnsigned(mix(fingerprint + (seed + 1) * GOLDEN), size);
+    }
+
+    /** Returns the slot of a fingerprint. */
+    public long slot(long fingerprint) {
+        int seed = seeds[bucket(fingerprint)];
+        if (seed < 0) {
+            return -(long) seed - 1;
+        }
+        return slot(fingerprint, seed);
+    }
+
+    /**
+     * Returns a 64-bit fingerprint of a term (FNV-1a over the characters,
+     * followed by a final mixing step).
+     */
+    public static long fingerprint(String term) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < term.length(); i++) {
+            h ^= term.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /** The finalizer of MurmurHash3, which spreads every input bit over the output. */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
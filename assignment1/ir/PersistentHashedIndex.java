@@ -12,6 +12,9 @@ import java.net.IDN;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.*;
 
 /*
@@ -23,7 +26,9 @@ import java.nio.charset.*;
  *
  *   When words are read and indexed, they are first put in an ordinary,
  *   main-memory HashMap. When all words are read, the index is committed
- *   to disk.
+ *   to disk. If the HashMap outgrows the memory budget of the indexer, it
+ *   is flushed to disk as a sorted block, and all blocks are merged when
+ *   the index is committed.
  */
 public class PersistentHashedIndex implements Index {
 
@@ -31,10 +36,13 @@ public class PersistentHashedIndex implements Index {
     public static final String INDEXDIR = "./index";
 
     /** The dictionary file name */
-    public static final String DICTIONARY_FNAME = INDEXDIR + "/dictionary";
+    public static final String DICTIONARY_FNAME = "dictionary";
 
     /** The data file name */
-    public static final String DATA_FNAME = INDEXDIR + "/data";
+    public static final String DATA_FNAME = "data";
+
+    /** The sorted, front-coded term dictionary file name */
+    public static final String TERMS_FNAME = "terms";
 
     /** The tokens file name */
     public static final String tokenS_FNAME = "tokens";
@@ -42,8 +50,24 @@ public class PersistentHashedIndex implements Index {
     /** The doc info file name */
     public static final String DOCINFO_FNAME = "docInfo";
 
-    /** The dictionary hash table on disk can fit this many entries. */
-    public static final long TABLESIZE = 611953L;
+    /** The Bloom filter file name */
+    public static final String FILTER_FNAME = "filter";
+
+    /** The directory where the files of this index are stored. */
+    final String indexDir;
+
+    /** The first docID of the documents stored in this index. */
+    int firstDocID = 0;
+
+    /** The last docID of the documents stored in this index. */
+    int lastDocID = Integer.MAX_VALUE;
+
+    /**
+     * When the index is one of several shards, the number of shards and the
+     * number of this shard: it holds the docIDs d with d % numShards == shard.
+     */
+    int numShards = 1;
+    int shard = 0;
 
     /** The dictionary hash table is stored in this file. */
     RandomAccessFile dictionaryFile;
@@ -54,12 +78,59 @@ public class PersistentHashedIndex implements Index {
     /** Pointer to the first free memory cell in the data file. */
     long free = 0L;
 
-    /** The cache as a main-memory hash map. */
+    /** If true, lookups are served from memory mappings of the files. */
+    boolean memoryMapped;
+
+    /** Read-only mapping of the dictionary file (only in memory-mapped mode). */
+    MappedByteBuffer dictionaryBuffer;
+
+    /** Read-only mapping of the data file (only in memory-mapped mode). */
+    MappedByteBuffer dataBuffer;
+
+    /** The main-memory index, holding the postings inserted since the last flush. */
     HashMap<String, PostingsList> index = new HashMap<String, PostingsList>();
 
-    ArrayList<Long> usedHashes = new ArrayList<>();
+    /** Default size of the postings cache, in bytes. */
+    public static final long CACHE_BYTES = 64L * 1024 * 1024;
+
+    /** The cache of postings lists read from disk. */
+    PostingsCache cache = new PostingsCache(CACHE_BYTES);
+
+    /** Rough heap cost of a term in the main-memory index, excluding its characters. */
+    static final int TERM_BYTES = 120;
+
+    /** Rough heap cost of a PostingsEntry. */
+    static final int ENTRY_BYTES = 64;
+
+    /** Rough heap cost of one position in a PostingsEntry. */
+    static final int POSITION_BYTES = 20;
+
+    /** Estimated number of bytes used by the postings inserted since the last flush. */
+    long memoryUsed = 0L;
 
-    private final int ENTRYBYTESIZE = 16;
+    /** Blocks flushed to disk during indexing, in docID order. */
+    ArrayList<String> blockFiles = new ArrayList<String>();
+
+    /** Size of one dictionary entry: fingerprint, data pointer and data size. */
+    private static final int ENTRYBYTESIZE = 20;
+
+    /** Number of dictionary entries written together during a commit. */
+    static final int ENTRY_BATCH = 4096;
+
+    /** The perfect hash function of the dictionary, loaded when the index is opened. */
+    PerfectHash perfectHash;
+
+    /** Position of the first dictionary entry in the dictionary file. */
+    long entriesStart = 0L;
+
+    /** The terms in sorted order, for prefix and range lookups. */
+    FrontCodedDictionary sortedTerms;
+
+    /** The names and lengths of the committed documents, or null. */
+    DocumentTable docTable;
+
+    /** A filter over all terms in the dictionary, or null. */
+    BloomFilter termFilter;
 
     // size of index in hashedindex is 195634
     // ===================================================================
@@ -67,19 +138,14 @@ public class PersistentHashedIndex implements Index {
     /**
      * A helper class representing one entry in the dictionary hashtable.
      */
-    public class Entry {
-        //
-        // YOUR CODE HERE
-        //
+    public static class Entry {
+        long fingerprint; // 64-bit fingerprint of the full term
         long pointer; // pointer to postinglist
-        char firstChar;
-        char lastChar;
         int size; // size of postingslist in bytes
 
-        public Entry(long pointer, int size, char firstChar, char lastChar) {
+        public Entry(long fingerprint, long pointer, int size) {
+            this.fingerprint = fingerprint;
             this.pointer = pointer;
-            this.firstChar = firstChar;
-            this.lastChar = lastChar;
             this.size = size;
         }
     }
@@ -91,197 +157,557 @@ public class PersistentHashedIndex implements Index {
      * If these files don't exist, they will be created.
      */
     public PersistentHashedIndex() {
+        this(false);
+    }
+
+    /**
+     * Constructor. Opens the dictionary file and the data file, and maps
+     * them into memory if <code>memoryMapped</code> is true.
+     */
+    public PersistentHashedIndex(boolean memoryMapped) {
+        this(INDEXDIR, memoryMapped);
+    }
+
+    /**
+     * Constructor. Opens the index stored in the directory <code>indexDir</code>.
+     */
+    public PersistentHashedIndex(String indexDir, boolean memoryMapped) {
+        this.indexDir = indexDir;
+        this.memoryMapped = memoryMapped;
+        try {
+            dictionaryFile = new RandomAccessFile(indexDir + "/" + DICTIONARY_FNAME, "rw");
+            dataFile = new RandomAccessFile(indexDir + "/" + DATA_FNAME, "rw");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
         try {
-            dictionaryFile = new RandomAccessFile(DICTIONARY_FNAME, "rw");
-            dataFile = new RandomAccessFile(DATA_FNAME, "rw");
+            docTable = DocumentTable.open(indexDir + "/" + DOCINFO_FNAME);
         } catch (IOException e) {
             e.printStackTrace();
         }
 
         try {
-            readDocInfo();
-        } catch (FileNotFoundException e) {
+            termFilter = BloomFilter.read(indexDir + "/" + FILTER_FNAME);
         } catch (IOException e) {
             e.printStackTrace();
         }
 
+        readDictionaryHeader();
+        openSortedTerms();
+        if (memoryMapped) {
+            mapFiles();
+        }
     }
 
     /**
-     * Writes data to the data file at a specified place.
-     *
-     * @return The number of bytes written.
+     * Opens the sorted term dictionary.
+     */
+    void openSortedTerms() {
+        try {
+            sortedTerms = new FrontCodedDictionary(indexDir + "/" + TERMS_FNAME);
+        } catch (IOException e) {
+            e.printStackTrace();
+            sortedTerms = null;
+        }
+    }
+
+    /**
+     * Reads the perfect hash function stored at the start of the dictionary
+     * file. The file starts with the number of entries and the number of
+     * buckets, followed by the seed of every bucket and then the entries.
+     */
+    void readDictionaryHeader() {
+        try {
+            if (dictionaryFile.length() == 0) {
+                return;
+            }
+            dictionaryFile.seek(0);
+            int size = dictionaryFile.readInt();
+            int[] seeds = new int[dictionaryFile.readInt()];
+            byte[] seedBytes = new byte[4 * seeds.length];
+            dictionaryFile.readFully(seedBytes);
+            ByteBuffer.wrap(seedBytes).asIntBuffer().get(seeds);
+            perfectHash = new PerfectHash(size, seeds);
+            entriesStart = 8L + seedBytes.length;
+        } catch (IOException e) {
+            e.printStackTrace();
+            perfectHash = null;
+        }
+    }
+
+    /**
+     * Writes the perfect hash function at the start of the dictionary file.
+     */
+    void writeDictionaryHeader(PerfectHash mph) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8 + 4 * mph.seeds.length);
+        header.putInt(mph.size);
+        header.putInt(mph.seeds.length);
+        header.asIntBuffer().put(mph.seeds);
+        dictionaryFile.seek(0);
+        dictionaryFile.write(header.array());
+        perfectHash = mph;
+        entriesStart = header.capacity();
+    }
+
+    /**
+     * Maps the dictionary file and the data file into memory. The mappings
+     * are read-only and can be shared by several threads, since every
+     * lookup works on its own view of the buffers.
      */
-    int writeData(String dataString, long ptr) {
+    void mapFiles() {
         try {
-            dataFile.seek(ptr);
-            byte[] data = dataString.getBytes();
-            dataFile.write(data);
-            return data.length;
+            if (dictionaryFile.length() > Integer.MAX_VALUE || dataFile.length() > Integer.MAX_VALUE) {
+                System.err.println("Index files are too large to be memory-mapped, using file access.");
+                dictionaryBuffer = null;
+                dataBuffer = null;
+                return;
+            }
+            dictionaryBuffer = dictionaryFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                    dictionaryFile.length());
+            dataBuffer = dataFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, dataFile.length());
         } catch (IOException e) {
             e.printStackTrace();
-            return -1;
+            dictionaryBuffer = null;
+            dataBuffer = null;
         }
     }
 
     /**
-     * Reads data from the data file
+     * Returns a view of <code>size</code> bytes of a mapped buffer, starting at
+     * <code>ptr</code>.
+     */
+    private static ByteBuffer slice(MappedByteBuffer buffer, long ptr, int size) {
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) ptr);
+        view.limit((int) ptr + size);
+        return view.slice();
+    }
+
+    /**
+     * Reads data from the data file. The file is read at an absolute
+     * position, without moving the file pointer, so lookups may run while a
+     * background merge reads the same file.
      */
-    String readData(long ptr, int size) {
+    ByteBuffer readData(long ptr, int size) {
+        if (dataBuffer != null) {
+            return slice(dataBuffer, ptr, size);
+        }
         try {
-            dataFile.seek(ptr);
-            byte[] data = new byte[size];
-            dataFile.readFully(data);
-            return new String(data);
+            return readFully(dataFile.getChannel(), ptr, size);
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * Reads <code>size</code> bytes of a file channel starting at
+     * <code>ptr</code>, without using or changing the channel position.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long ptr, int size) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(size);
+        while (data.hasRemaining()) {
+            int n = channel.read(data, ptr + data.position());
+            if (n < 0) {
+                throw new EOFException();
+            }
+        }
+        data.flip();
+        return data;
+    }
+
     // ==================================================================
     //
     // Reading and writing to the dictionary file.
 
-    /*
-     * Writes an entry to the dictionary hash table file.
-     *
-     * @param entry The key of this entry is assumed to have a fixed length
-     * 
-     * @param ptr The place in the dictionary file to store the entry
+    /**
+     * Writes all dictionary entries in slot order. Every slot of the perfect
+     * hash is used, so the entries form one contiguous run that is written
+     * ENTRY_BATCH entries at a time.
      */
-    void writeEntry(Entry entry, long ptr) throws IOException {
-        //
-        // YOUR CODE HERE
-        //
-        dictionaryFile.seek(ptr);
-        dictionaryFile.writeChar(entry.firstChar);
-        dictionaryFile.writeChar(entry.lastChar);
-        dictionaryFile.writeLong(entry.pointer);
-        dictionaryFile.writeInt(entry.size);
+    void writeEntries(PerfectHash mph, List<Entry> entries) throws IOException {
+        Entry[] bySlot = new Entry[entries.size()];
+        for (Entry entry : entries) {
+            bySlot[(int) mph.slot(entry.fingerprint)] = entry;
+        }
+        FileChannel channel = dictionaryFile.getChannel();
+        ByteBuffer batch = ByteBuffer.allocate(ENTRY_BATCH * ENTRYBYTESIZE);
+        long ptr = entriesStart;
+        for (int slot = 0; slot < bySlot.length; slot++) {
+            batch.putLong(bySlot[slot].fingerprint);
+            batch.putLong(bySlot[slot].pointer);
+            batch.putInt(bySlot[slot].size);
+            if (!batch.hasRemaining() || slot == bySlot.length - 1) {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    ptr += channel.write(batch, ptr);
+                }
+                batch.clear();
+            }
+        }
+    }
 
+    /**
+     * Reads the raw bytes of the dictionary slot starting at <code>ptr</code>,
+     * or returns null if the slot lies beyond the end of the file.
+     */
+    ByteBuffer readSlot(long ptr) throws IOException {
+        if (dictionaryBuffer != null) {
+            if (ptr + ENTRYBYTESIZE > dictionaryBuffer.capacity()) {
+                return null;
+            }
+            return slice(dictionaryBuffer, ptr, ENTRYBYTESIZE);
+        }
+        if (ptr + ENTRYBYTESIZE > dictionaryFile.length()) {
+            return null;
+        }
+        return readFully(dictionaryFile.getChannel(), ptr, ENTRYBYTESIZE);
     }
 
     /**
-     * Reads an entry from the dictionary file.
+     * Reads the dictionary entry for a term, or returns null if the term
+     * is not in the dictionary. Exactly one entry is read, and it is only
+     * accepted if its fingerprint is the fingerprint of the term.
      *
-     * @param ptr The place in the dictionary file where to start reading.
+     * @param term The term to look up.
      */
-    Entry readEntry(long ptr, String term) {
-        //
-        // REPLACE THE STATEMENT BELOW WITH YOUR CODE
-        //
-        long originalPtr = ptr;
-        while(true) {
-            try {
-                dictionaryFile.seek(ptr);
-                if(dictionaryFile.readChar() == term.charAt(0)){
-                    Character firstchar = term.charAt(0);
-                    Character secChar = dictionaryFile.readChar();
-                    // Check if the second character matches the token
-                    if (term.length() > 1 && secChar == term.charAt(1)) {
-                        // Read additional data and return an Entry
-                        long dataPtr = dictionaryFile.readLong();
-                        int size = dictionaryFile.readInt();
-                        return new Entry(dataPtr, size, firstchar, secChar);
-                    }
-                    
-                    // Check if the second character is a wildcard '*'
-                    if (term.length() == 1 && secChar == '-') {
-                        // Read additional data and return an Entry
-                        long dataPtr = dictionaryFile.readLong();
-                        int size = dictionaryFile.readInt();
-                        return new Entry(dataPtr, size, firstchar, '-');
-                    }
-                }
-
-                long hash = ptr/ENTRYBYTESIZE;
-                ptr = ((hash+1
-                )%TABLESIZE)*ENTRYBYTESIZE;
-                dictionaryFile.seek(ptr);
-                if(ptr == originalPtr || dictionaryFile.readChar() == '\0' || dictionaryFile.readChar() == ' ')
-                    return null;
-            } catch (IOException e) {
-                e.printStackTrace();
+    Entry readEntry(String term) {
+        if (perfectHash == null || perfectHash.size == 0) {
+            return null;
+        }
+        long fingerprint = PerfectHash.fingerprint(term);
+        long ptr = entriesStart + perfectHash.slot(fingerprint) * ENTRYBYTESIZE;
+        try {
+            ByteBuffer slot = readSlot(ptr);
+            if (slot == null || slot.getLong(0) != fingerprint) {
+                return null;
             }
+            return new Entry(fingerprint, slot.getLong(8), slot.getInt(16));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
         }
     }
 
     // ==================================================================
 
     /**
-     * Writes the document names and document lengths to file.
+     * Writes the names and lengths of the documents stored in this index to
+     * the document table, and maps the new table. The documents are taken
+     * from 'docNames' and 'docLengths' and from the tables of
+     * <code>sources</code>.
      *
      * @throws IOException { exception_description }
      */
-    private void writeDocInfo() throws IOException {
-        FileOutputStream fout = new FileOutputStream(INDEXDIR + "/docInfo");
+    private void writeDocInfo(List<PersistentHashedIndex> sources) throws IOException {
+        TreeMap<Integer, String> names = new TreeMap<Integer, String>();
+        HashMap<Integer, Integer> lengths = new HashMap<Integer, Integer>();
+        for (PersistentHashedIndex source : sources) {
+            DocumentTable table = source.docTable;
+            for (int docID = table == null ? 0 : table.firstDocID(); table != null && docID <= table.lastDocID(); docID += table.stride()) {
+                if (table.contains(docID)) {
+                    names.put(docID, table.name(docID));
+                    lengths.put(docID, table.length(docID));
+                }
+            }
+        }
         for (Map.Entry<Integer, String> entry : docNames.entrySet()) {
             Integer key = entry.getKey();
-            String docInfoEntry = key + ";" + entry.getValue() + ";" + docLengths.get(key) + "\n";
-            fout.write(docInfoEntry.getBytes());
+            if (key < firstDocID || key > lastDocID || key % numShards != shard) {
+                continue;
+            }
+            names.put(key, entry.getValue());
+            lengths.put(key, docLengths.get(key));
         }
-        fout.close();
+        DocumentTable.write(indexDir + "/" + DOCINFO_FNAME, names, lengths, numShards);
+        docTable = DocumentTable.open(indexDir + "/" + DOCINFO_FNAME);
     }
 
     /**
-     * Reads the document names and document lengths from file, and
-     * put them in the appropriate data structures.
-     *
-     * @throws IOException { exception_description }
+     * Returns the name of a document, looked up in the document table.
      */
-    private void readDocInfo() throws IOException {
-        File file = new File(INDEXDIR + "/docInfo");
-        FileReader freader = new FileReader(file);
-        try (BufferedReader br = new BufferedReader(freader)) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] data = line.split(";");
-                docNames.put(new Integer(data[0]), data[1]);
-                docLengths.put(new Integer(data[0]), new Integer(data[2]));
-            }
+    public String docName(int docID) {
+        if (docTable != null && docTable.contains(docID)) {
+            return docTable.name(docID);
+        }
+        return docNames.get(docID);
+    }
+
+    /**
+     * Returns the length of a document, looked up in the document table.
+     */
+    public int docLength(int docID) {
+        if (docTable != null && docTable.contains(docID)) {
+            return docTable.length(docID);
         }
-        freader.close();
+        Integer length = docLengths.get(docID);
+        return length == null ? 0 : length;
     }
 
     /**
      * Write the index to files.
      */
     public void writeIndex() {
-        int collisions = 0;
+        ArrayList<SortedTermReader> readers = new ArrayList<SortedTermReader>();
         try {
-            // Write the 'docNames' and 'docLengths' hash maps to a file
-            writeDocInfo();
-
-            // Write the dictionary and the postings list
-
-            //
-            // YOUR CODE HERE
-            //
-            for (String token : index.keySet()) {
-                long dataFilePointer = dataFile.getFilePointer();
-                PostingsList pl = index.get(token);
-                String postingsListString = pl.toString();
-                int size = writeData(postingsListString, dataFilePointer);
-                long pointer = hash(token);
-                if (usedHashes.contains(pointer)) {
-                    pointer = findNewHash(pointer);
-                    collisions++;
+            if (!blockFiles.isEmpty()) {
+                flushBlock();
+                System.err.print("merging " + blockFiles.size() + " blocks...");
+                for (int i = 0; i < blockFiles.size(); i++) {
+                    readers.add(new IndexBlock.Reader(blockFiles.get(i), i));
                 }
-                usedHashes.add(pointer);
-                if(token.length() > 1) {
-                    Entry entry = new Entry(dataFilePointer, size, token.charAt(0), token.charAt(1));
-                    writeEntry(entry, pointer);
-                }else {
-                    Entry entry = new Entry(dataFilePointer, size, token.charAt(0), '-');
-                    writeEntry(entry, pointer);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        commit(readers, Collections.<PersistentHashedIndex>emptyList());
+        for (String fileName : blockFiles) {
+            new File(fileName).delete();
+        }
+        blockFiles.clear();
+    }
+
+    /**
+     * Writes this index as the merge of other persistent indexes, given in
+     * docID order.
+     */
+    public void writeMerged(List<PersistentHashedIndex> indexes) {
+        ArrayList<SortedTermReader> readers = new ArrayList<SortedTermReader>();
+        for (int i = 0; i < indexes.size(); i++) {
+            readers.add(indexes.get(i).termReader(i));
+        }
+        commit(readers, indexes);
+    }
+
+    /**
+     * Writes the doc info, the data file and the dictionaries. The postings
+     * are taken from the readers if there are any, and otherwise from the
+     * main-memory index. The documents of <code>sources</code> are added to
+     * the doc info.
+     */
+    private void commit(List<SortedTermReader> readers, List<PersistentHashedIndex> sources) {
+        HashSlots slots = null;
+        try {
+            // Write the 'docNames' and 'docLengths' hash maps to the document table
+            writeDocInfo(sources);
+
+            // The files are rewritten from scratch, so drop any old mappings
+            dictionaryBuffer = null;
+            dataBuffer = null;
+            dataFile.setLength(0);
+            free = 0L;
+
+            // Write the postings lists in sorted term order, remembering where each of them went
+            try (PostingsWriter writer = new PostingsWriter(dataFile.getChannel(), free)) {
+                if (readers.isEmpty()) {
+                    String[] sorted = index.keySet().toArray(new String[index.size()]);
+                    Arrays.sort(sorted);
+                    for (String term : sorted) {
+                        writer.add(term, index.get(term));
+                    }
+                } else {
+                    mergeSorted(readers, writer);
                 }
+                free = writer.finish();
+                slots = writeDictionary(writer.terms(), writer.entries());
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (slots != null) {
+            System.err.println(slots.collisions() + " buckets needed more than one seed.");
+            slots.printStatistics();
+        }
+        if (memoryMapped) {
+            mapFiles();
+        }
+        // From now on, postings are read from disk through the cache
+        index.clear();
+        memoryUsed = 0L;
+        cache.clear();
+    }
+
+    /**
+     * Prints the hit, miss, eviction and rejection counters of the
+     * postings cache.
+     */
+    public void printCacheStatistics() {
+        cache.printStatistics();
+    }
 
+    /**
+     * Replaces the postings cache by an empty cache of <code>bytes</code> bytes.
+     */
+    public void setCacheSize(long bytes) {
+        cache = new PostingsCache(bytes);
+    }
+
+    /**
+     * Writes the perfect hash dictionary and the sorted term dictionary.
+     * The terms must be sorted, and their entries given in the same order.
+     *
+     * @return The slot statistics of the perfect hash.
+     */
+    private HashSlots writeDictionary(ArrayList<String> terms, ArrayList<Entry> entries) throws IOException {
+        int numTerms = terms.size();
+        long[] fingerprints = new long[numTerms];
+        long[] pointers = new long[numTerms];
+        int[] sizes = new int[numTerms];
+        for (int i = 0; i < numTerms; i++) {
+            fingerprints[i] = entries.get(i).fingerprint;
+            pointers[i] = entries.get(i).pointer;
+            sizes[i] = entries.get(i).size;
+        }
+
+        // Write the dictionary, one entry per slot of the perfect hash
+        HashSlots slots = new HashSlots(numTerms);
+        PerfectHash mph = PerfectHash.build(fingerprints, slots);
+        dictionaryFile.setLength(0);
+        writeDictionaryHeader(mph);
+        writeEntries(mph, entries);
+
+        // Write the filter that lets lookups of absent terms skip the dictionary
+        BloomFilter filter = new BloomFilter(numTerms);
+        for (long fingerprint : fingerprints) {
+            filter.add(fingerprint);
+        }
+        filter.write(indexDir + "/" + FILTER_FNAME);
+        termFilter = filter;
+
+        // Write the sorted term dictionary
+        FrontCodedDictionary.write(indexDir + "/" + TERMS_FNAME, terms.toArray(new String[numTerms]), pointers, sizes);
+        openSortedTerms();
+        return slots;
+    }
+
+    /**
+     * Returns the estimated heap size of the postings inserted since the
+     * last block was flushed.
+     */
+    public long estimatedMemory() {
+        return memoryUsed;
+    }
+
+    /**
+     * Writes the main-memory index to a new sorted block on disk and empties
+     * it. Must be called between documents, so that every document ends up
+     * in exactly one block.
+     */
+    public void flushBlock() throws IOException {
+        if (index.isEmpty()) {
+            return;
+        }
+        String fileName = indexDir + "/block" + blockFiles.size();
+        System.err.println("Flushing " + index.size() + " terms to " + fileName);
+        IndexBlock.write(fileName, index);
+        blockFiles.add(fileName);
+        index.clear();
+        memoryUsed = 0L;
+    }
+
+    /**
+     * Merges sorted readers into the data file with a k-way merge. Apart
+     * from the batches the writer is encoding, only one term per reader is
+     * held in memory at a time. The readers are closed afterwards.
+     */
+    private void mergeSorted(List<SortedTermReader> readers, PostingsWriter writer) throws IOException {
+        PriorityQueue<SortedTermReader> queue = new PriorityQueue<SortedTermReader>();
+        try {
+            for (SortedTermReader reader : readers) {
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                SortedTermReader reader = queue.poll();
+                String term = reader.term;
+                PostingsList merged = reader.postings();
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+                // Later readers hold later documents, so their postings are appended
+                while (!queue.isEmpty() && queue.peek().term.equals(term)) {
+                    reader = queue.poll();
+                    append(merged, reader.postings());
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+                writer.add(term, merged);
+            }
+        } finally {
+            for (SortedTermReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Returns a reader over the terms of this index in sorted order, read
+     * from the files on disk.
+     */
+    SortedTermReader termReader(int number) {
+        return new SortedTermReader(number) {
+            FrontCodedDictionary.Cursor cursor = sortedTerms == null ? null : sortedTerms.cursor();
+
+            public boolean next() throws IOException {
+                if (cursor == null || !cursor.next()) {
+                    return false;
+                }
+                term = cursor.term();
+                return true;
+            }
+
+            public PostingsList postings() {
+                return PostingsCodec.decode(readData(cursor.pointer(), cursor.size()));
+            }
+        };
+    }
+
+    /**
+     * Returns the size of the data file in bytes.
+     */
+    public long dataSize() {
+        try {
+            return dataFile.length();
         } catch (IOException e) {
             e.printStackTrace();
+            return 0L;
+        }
+    }
+
+    /**
+     * Closes the files of this index.
+     */
+    public void close() {
+        try {
+            dictionaryBuffer = null;
+            dataBuffer = null;
+            dictionaryFile.close();
+            dataFile.close();
+            if (sortedTerms != null) {
+                sortedTerms.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends the entries of <code>tail</code>, whose docIDs are not smaller
+     * than those of <code>list</code>, to <code>list</code>.
+     */
+    private static void append(PostingsList list, PostingsList tail) {
+        for (int i = 0; i < tail.size(); i++) {
+            PostingsEntry entry = tail.get(i);
+            PostingsEntry last = list.size() > 0 ? list.get(list.size() - 1) : null;
+            if (last != null && last.docID == entry.docID) {
+                last.getOffsets().addAll(entry.getOffsets());
+            } else {
+                list.addPersistedEntry(entry);
+            }
         }
-        System.err.println(collisions + " collisions.");
     }
 
     // ==================================================================
@@ -291,71 +717,81 @@ public class PersistentHashedIndex implements Index {
      * if the token is not in the index.
      */
     public PostingsList getPostings(String token) {
-        //
-        // REPLACE THE STATEMENT BELOW WITH YOUR CODE
-        // ed
         PostingsList postingsList = index.get(token);
-        if(postingsList == null) {
-            long hash = hash(token);
-            Entry entry = readEntry(hash, token);
-            if(entry != null) {
-                String postingsListString = readData(entry.pointer, entry.size);
-                postingsList = getPostingsList(postingsListString);
-                index.put(token, postingsList);
+        if (postingsList == null && termFilter != null
+                && !termFilter.mightContain(PerfectHash.fingerprint(token))) {
+            // Certainly not on disk, so no need to touch the cache or the dictionary
+            return null;
+        }
+        if (postingsList == null) {
+            postingsList = cache.get(token);
+        }
+        if (postingsList == null) {
+            Entry entry = readEntry(token);
+            if (entry != null) {
+                ByteBuffer data = readData(entry.pointer, entry.size);
+                postingsList = PostingsCodec.decode(data);
+                cache.put(token, postingsList);
             }
         }
-        
         return postingsList;
     }
 
-    public boolean isValidInteger(String str) {
+    /**
+     * Returns all indexed terms starting with <code>prefix</code>, in sorted order.
+     */
+    public ArrayList<String> termsWithPrefix(String prefix) {
         try {
-            // Attempt to parse the string as an integer
-            Integer.parseInt(str.trim());
-            // If parsing succeeds, return true
-            return true;
-        } catch (NumberFormatException e) {
-            // If parsing fails, return false
-            return false;
-        }
-    }
-    
-
-    public PostingsList getPostingsList(String encodedString) {
-
-        PostingsList postingsList = new PostingsList();
-        // Split the encoded string by semi-colons to get individual entries
-        encodedString = encodedString.substring(0, encodedString.length()-1);
-        
-        String[] entries = encodedString.split(";");
-    
-        // Process each entry
-        for (String entry : entries) {
-            // Split the entry by "/" to separate docID and the rest
-            String[] parts = entry.split("/");   
-            if(!parts[0].trim().isEmpty() && !isValidInteger(parts[0].trim()) && parts[0].trim().equals("")) {
-                continue;
+            if (sortedTerms != null) {
+                return sortedTerms.termsWithPrefix(prefix);
             }
-            int docID = Integer.parseInt(parts[0].trim()); // Trim before parsing
-            String rest = parts[1].trim(); // Trim after splitting
-    
-            // Split the rest by ":" to separate score and offsets
-            String[] parts2 = rest.split(":");
-            double score = Double.parseDouble(parts2[0].trim()); // Trim before parsing
-            // Extract offsets and add them to an ArrayList
-            String[] offsetStrings = parts2[1].trim().split(","); // Trim after splitting
-            ArrayList<Integer> offsets = new ArrayList<>();
-            for (String offsetStr : offsetStrings) {
-                offsets.add(Integer.parseInt(offsetStr.trim())); // Trim before parsing
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<String>();
+    }
+
+    /**
+     * Returns the first indexed term that is greater than or equal to
+     * <code>term</code>, or null if there is none.
+     */
+    public String ceilingTerm(String term) {
+        try {
+            if (sortedTerms != null) {
+                FrontCodedDictionary.Cursor cursor = sortedTerms.ceiling(term);
+                return cursor == null ? null : cursor.term();
             }
-    
-            // Create a new PostingsEntry and add it to the postingsList
-            PostingsEntry postingsEntry = new PostingsEntry(docID, score, offsets);
-            postingsList.addPersistedEntry(postingsEntry);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        return postingsList;
+        return null;
     }
-    
+
+    /**
+     * Returns the union of the postings of all terms starting with
+     * <code>prefix</code>, or null if there are no such terms.
+     */
+    public PostingsList getPrefixPostings(String prefix) {
+        ArrayList<String> terms = termsWithPrefix(prefix);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        TreeMap<Integer, ArrayList<Integer>> union = new TreeMap<Integer, ArrayList<Integer>>();
+        for (String term : terms) {
+            PostingsList list = getPostings(term);
+            for (int i = 0; list != null && i < list.size(); i++) {
+                PostingsEntry entry = list.get(i);
+                union.computeIfAbsent(entry.docID, k -> new ArrayList<Integer>()).addAll(entry.getOffsets());
+            }
+        }
+        PostingsList result = new PostingsList();
+        for (Map.Entry<Integer, ArrayList<Integer>> doc : union.entrySet()) {
+            Collections.sort(doc.getValue());
+            result.addPersistedEntry(new PostingsEntry(doc.getKey(), 0, doc.getValue()));
+        }
+        return result;
+    }
+
     /**
      * Inserts this token in the main-memory hashtable.
      */
@@ -363,33 +799,24 @@ public class PersistentHashedIndex implements Index {
         //
         // YOUR CODE HERE
         //
-        if (!index.containsKey(token)) {
-            PostingsList list = new PostingsList(docID, offset);
-            index.put(token, list);
+        PostingsList list = index.get(token);
+        if (list == null) {
+            index.put(token, new PostingsList(docID, offset));
+            memoryUsed += TERM_BYTES + 2 * token.length() + ENTRY_BYTES + POSITION_BYTES;
         } else {
-            PostingsList list = index.get(token);
+            int entries = list.size();
             list.addEntry(docID, offset);
+            memoryUsed += list.size() > entries ? ENTRY_BYTES + POSITION_BYTES : POSITION_BYTES;
         }
     }
 
-    public long hash(String token) {
-        return (Math.abs(token.hashCode())% TABLESIZE) * ENTRYBYTESIZE;
-    }
-
-    public long findNewHash(long pointer) {
-        long hash = pointer/ENTRYBYTESIZE;
-        do {
-            hash = (hash+1)%TABLESIZE;
-            pointer = (hash)*ENTRYBYTESIZE;
-        } while(usedHashes.contains(pointer));
-        return pointer;
-    }
-
     /**
      * Write index to file after indexing is done.
      */
     public void cleanup() {
-        System.err.println(index.keySet().size() + " unique words");
+        if (blockFiles.isEmpty()) {
+            System.err.println(index.keySet().size() + " unique words");
+        }
         System.err.print("Writing index to disk...");
         writeIndex();
         System.err.println("done!");
@@ -0,0 +1,247 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of postings lists read from disk, bounded by an estimate of the
+ * heap size of the cached lists.
+ *
+ * Eviction follows a segmented LRU policy. New lists enter a probationary
+ * segment and are moved to a protected segment when they are hit again; the
+ * protected segment holds at most PROTECTED_SHARE of the cache. Admission is
+ * filtered by a frequency sketch (TinyLFU): when the cache is full, a new
+ * list only replaces the eviction candidate if its term has been asked for
+ * more often recently. A one-off query for a rare term can then not flush
+ * the lists of popular terms.
+ */
+public class PostingsCache {
+
+    /** Share of the cache reserved for lists that have been hit at least once. */
+    static final double PROTECTED_SHARE = 0.8;
+
+    /** Maximum estimated size of the cached lists, in bytes. */
+    final long maxBytes;
+
+    /** Lists that have not been hit since they were cached, least recently used first. */
+    final LinkedHashMap<String, Node> probation = new LinkedHashMap<String, Node>();
+
+    /** Lists that have been hit, least recently used first. */
+    final LinkedHashMap<String, Node> protect = new LinkedHashMap<String, Node>();
+
+    long probationBytes = 0L;
+    long protectedBytes = 0L;
+
+    final FrequencySketch sketch;
+
+    long hits = 0L;
+    long misses = 0L;
+    long evictions = 0L;
+    long rejections = 0L;
+
+    /** A cached list and its estimated size. */
+    static class Node {
+        final PostingsList list;
+        final long bytes;
+
+        Node(PostingsList list, long bytes) {
+            this.list = list;
+            this.bytes = bytes;
+        }
+    }
+
+    public PostingsCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        sketch = new FrequencySketch(maxBytes / 1024);
+    }
+
+    /**
+     * Returns the cached list of a term, or null. Every call counts as an
+     * access to the term, whether it hits or not.
+     */
+    public synchronized PostingsList get(String term) {
+        sketch.increment(term);
+        Node node = protect.remove(term);
+        if (node != null) {
+            protect.put(term, node);
+            hits++;
+            return node.list;
+        }
+        node = probation.remove(term);
+        if (node != null) {
+            probationBytes -= node.bytes;
+            promote(term, node);
+            hits++;
+            return node.list;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Offers a list read from disk to the cache. The list is only cached if
+     * it fits and the admission filter lets it in: its term must have been
+     * asked for more often than that of every list it would evict.
+     */
+    public synchronized void put(String term, PostingsList list) {
+        if (probation.containsKey(term) || protect.containsKey(term)) {
+            return;
+        }
+        long bytes = weigh(term, list);
+        if (bytes > maxBytes) {
+            rejections++;
+            return;
+        }
+        // Choose all victims first, so nothing is evicted if the list is rejected
+        ArrayList<String> victims = new ArrayList<String>();
+        long free = maxBytes - probationBytes - protectedBytes;
+        int frequency = sketch.frequency(term);
+        Iterator<Map.Entry<String, Node>> it = probation.entrySet().iterator();
+        Iterator<Map.Entry<String, Node>> protectedIt = protect.entrySet().iterator();
+        while (free < bytes) {
+            Map.Entry<String, Node> victim = it.hasNext() ? it.next() : protectedIt.next();
+            if (frequency <= sketch.frequency(victim.getKey())) {
+                rejections++;
+                return;
+            }
+            victims.add(victim.getKey());
+            free += victim.getValue().bytes;
+        }
+        for (String victim : victims) {
+            evict(victim);
+        }
+        probation.put(term, new Node(list, bytes));
+        probationBytes += bytes;
+    }
+
+    /**
+     * Moves a list to the protected segment, demoting the least recently
+     * used protected lists to probation if the segment gets too big.
+     */
+    private void promote(String term, Node node) {
+        protect.put(term, node);
+        protectedBytes += node.bytes;
+        while (protectedBytes > PROTECTED_SHARE * maxBytes && protect.size() > 1) {
+            Map.Entry<String, Node> demoted = eldest(protect);
+            protect.remove(demoted.getKey());
+            protectedBytes -= demoted.getValue().bytes;
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationBytes += demoted.getValue().bytes;
+        }
+    }
+
+    private void evict(String term) {
+        Node node = probation.remove(term);
+        if (node != null) {
+            probationBytes -= node.bytes;
+        } else {
+            node = protect.remove(term);
+            protectedBytes -= node.bytes;
+        }
+        evictions++;
+    }
+
+    private static Map.Entry<String, Node> eldest(LinkedHashMap<String, Node> segment) {
+        Iterator<Map.Entry<String, Node>> it = segment.entrySet().iterator();
+        return it.next();
+    }
+
+    /** Removes all lists from the cache. The counters are kept. */
+    public synchronized void clear() {
+        probation.clear();
+        protect.clear();
+        probationBytes = 0L;
+        protectedBytes = 0L;
+    }
+
+    /**
+     * Estimates the heap size of a cached postings list once it is fully
+     * decoded, without decoding it.
+     */
+    static long weigh(String term, PostingsList list) {
+        return PersistentHashedIndex.TERM_BYTES + 2L * term.length()
+                + (long) PersistentHashedIndex.ENTRY_BYTES * list.size()
+                + (long) PersistentHashedIndex.POSITION_BYTES * list.maxPositions();
+    }
+
+    /** Estimated size of the cached lists, in bytes. */
+    public synchronized long bytes() {
+        return probationBytes + protectedBytes;
+    }
+
+    public synchronized double hitRatio() {
+        return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * Prints the hit, miss, eviction and rejection counters.
+     */
+    public synchronized void printStatistics() {
+        System.err.println(String.format(
+                "Postings cache: %d lists, %d of %d KB, %d hits, %d misses (hit ratio %.3f), %d evictions, %d rejected",
+                probation.size() + protect.size(), bytes() / 1024, maxBytes / 1024, hits, misses, hitRatio(),
+                evictions, rejections));
+    }
+
+    /**
+     * A count-min sketch of how often terms have been asked for, with 4-bit
+     * counters. All counters are halved at regular intervals so that old
+     * popularity fades away.
+     */
+    static class FrequencySketch {
+        static final int DEPTH = 4;
+        static final int MAX_COUNT = 15;
+
+        final byte[][] counters;
+        final int mask;
+        final long resetInterval;
+        long additions = 0L;
+
+        FrequencySketch(long expectedEntries) {
+            int width = Integer.highestOneBit((int) Math.max(1024, Math.min(expectedEntries, 1 << 24)) * 2 - 1);
+            counters = new byte[DEPTH][width];
+            mask = width - 1;
+            resetInterval = 10L * width;
+        }
+
+        private int index(long hash, int row) {
+            return (int) (PerfectHash.mix(hash + row * 0x9E3779B97F4A7C15L) & mask);
+        }
+
+        void increment(String term) {
+            long hash = term.hashCode();
+            for (int row = 0; row < DEPTH; row++) {
+                int i = index(hash, row);
+                if (counters[row][i] < MAX_COUNT) {
+                    counters[row][i]++;
+                }
+            }
+            if (++additions == resetInterval) {
+                for (byte[] row : counters) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(String term) {
+            long hash = term.hashCode();
+            int min = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, counters[row][index(hash, row)]);
+            }
+            return min;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes and decodes postings lists in the binary format used in the
+ * data file of the persistent index.
+ *
+ * A list is stored as two streams. The document stream holds one record
+ * per entry: the gap to the previous docID, the number of positions (the
+ * term frequency) and the number of bytes its positions take. The position
+ * stream follows it and holds the gaps between consecutive positions of
+ * every entry. Queries that only need docIDs and term frequencies never
+ * decode the position stream, and phrase queries only decode the positions
+ * of documents that contain all terms.
+ *
+ * The entries of the document stream are grouped in blocks of
+ * PostingsList.SKIP_BLOCK entries. A list starts with its number of entries
+ * and a skip table holding, for every block, the gap between its last docID
+ * and that of the previous block, the lengths in bytes of its part of the
+ * document stream and of the position stream, and its largest term
+ * frequency. Only the skip table is decoded when a list is read; a block
+ * of entries is decoded when one of its entries is first asked for, so an
+ * intersection leaping over blocks never decodes them.
+ *
+ * Every number is written as a variable-byte integer (7 bits per byte,
+ * the high bit marks that more bytes follow), so small gaps take a single
+ * byte.
+ *
+ * DocIDs and positions are assumed to be in increasing order, which is
+ * the order in which the indexer produces them.
+ */
+public class PostingsCodec {
+
+    /** A variable-byte integer never takes more than this many bytes. */
+    static final int MAX_VINT_BYTES = 5;
+
+    /**
+     * Encodes a postings list.
+     *
+     * @return A buffer positioned at the start of the encoded bytes.
+     */
+    public static ByteBuffer encode(PostingsList list) {
+        int numBlocks = (list.size() + PostingsList.SKIP_BLOCK - 1) / PostingsList.SKIP_BLOCK;
+        int numPositions = 0;
+        for (int i = 0; i < list.size(); i++) {
+            numPositions += list.get(i).getOffsets().size();
+        }
+        ByteBuffer docs = ByteBuffer.allocate(3 * list.size() * MAX_VINT_BYTES);
+        ByteBuffer positions = ByteBuffer.allocate(numPositions * MAX_VINT_BYTES);
+        ByteBuffer buf = ByteBuffer.allocate((2 + 4 * numBlocks) * MAX_VINT_BYTES
+                + docs.capacity() + positions.capacity());
+
+        writeVInt(buf, list.size());
+        writeVInt(buf, numBlocks);
+        int lastDocID = 0;
+        int lastBlockDocID = 0;
+        for (int b = 0; b < numBlocks; b++) {
+            int blockStart = docs.position();
+            int blockPositionStart = positions.position();
+            int maxTf = 0;
+            for (int i = b * PostingsList.SKIP_BLOCK; i < Math.min(list.size(), (b + 1) * PostingsList.SKIP_BLOCK); i++) {
+                PostingsEntry entry = list.get(i);
+                int entryStart = positions.position();
+                int lastOffset = 0;
+                for (int offset : entry.getOffsets()) {
+                    writeVInt(positions, offset - lastOffset);
+                    lastOffset = offset;
+                }
+                writeVInt(docs, entry.docID - lastDocID);
+                writeVInt(docs, entry.tf());
+                writeVInt(docs, positions.position() - entryStart);
+                lastDocID = entry.docID;
+                maxTf = Math.max(maxTf, entry.tf());
+            }
+            writeVInt(buf, lastDocID - lastBlockDocID);
+            writeVInt(buf, docs.position() - blockStart);
+            writeVInt(buf, positions.position() - blockPositionStart);
+            writeVInt(buf, maxTf);
+            lastBlockDocID = lastDocID;
+        }
+        docs.flip();
+        positions.flip();
+        buf.put(docs);
+        buf.put(positions);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Decodes a postings list, starting at the current position of the
+     * buffer, and moves the buffer past it. Only the skip table is decoded;
+     * the list keeps views of the document and position streams and
+     * decodes a block of entries when it is first needed, so the buffer
+     * must not be modified afterwards.
+     */
+    public static PostingsList decode(ByteBuffer buf) {
+        int size = readVInt(buf);
+        int numBlocks = readVInt(buf);
+        int[] blockLastDocIDs = new int[numBlocks];
+        int[] blockMaxTf = new int[numBlocks];
+        int[] blockDocStarts = new int[numBlocks];
+        int[] blockPositionStarts = new int[numBlocks];
+        int docBytes = 0;
+        int positionBytes = 0;
+        int lastBlockDocID = 0;
+        for (int b = 0; b < numBlocks; b++) {
+            lastBlockDocID += readVInt(buf);
+            blockLastDocIDs[b] = lastBlockDocID;
+            blockDocStarts[b] = docBytes;
+            docBytes += readVInt(buf);
+            blockPositionStarts[b] = positionBytes;
+            positionBytes += readVInt(buf);
+            blockMaxTf[b] = readVInt(buf);
+        }
+        ByteBuffer docs = buf.slice();
+        docs.limit(docBytes);
+        ByteBuffer positions = buf.duplicate();
+        positions.position(buf.position() + docBytes);
+        positions = positions.slice();
+        positions.limit(positionBytes);
+        buf.position(buf.position() + docBytes + positionBytes);
+
+        PostingsList list = new PostingsList();
+        list.setEncoded(size, docs, blockDocStarts, positions, blockPositionStarts, blockLastDocIDs, blockMaxTf);
+        return list;
+    }
+
+    /**
+     * Decodes the entries <code>from</code> up to <code>to</code> of a
+     * document stream into <code>entries</code>. They form one block, whose
+     * entries start at <code>docStart</code> in the document stream and
+     * whose positions start at <code>positionStart</code> in the position
+     * stream; <code>docID</code> is the last docID of the previous block.
+     */
+    static void decodeBlock(ByteBuffer docs, int docStart, int docID, ByteBuffer positions, int positionStart,
+            List<PostingsEntry> entries, int from, int to) {
+        ByteBuffer buf = docs.duplicate();
+        buf.position(docStart);
+        for (int i = from; i < to; i++) {
+            docID += readVInt(buf);
+            int tf = readVInt(buf);
+            int positionBytes = readVInt(buf);
+            entries.set(i, new PostingsEntry(docID, tf, positions, positionStart));
+            positionStart += positionBytes;
+        }
+    }
+
+    /**
+     * Decodes the <code>tf</code> positions of an entry, which start at
+     * <code>start</code> in a position stream.
+     */
+    static ArrayList<Integer> decodePositions(ByteBuffer positions, int start, int tf) {
+        ByteBuffer buf = positions.duplicate();
+        buf.position(start);
+        ArrayList<Integer> offsets = new ArrayList<>(tf);
+        int offset = 0;
+        for (int j = 0; j < tf; j++) {
+            offset += readVInt(buf);
+            offsets.add(offset);
+        }
+        return offsets;
+    }
+
+    /**
+     * Writes a non-negative integer as a variable-byte integer.
+     */
+    static void writeVInt(ByteBuffer buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    /**
+     * Reads a variable-byte integer from the current position of the buffer.
+     */
+    static int readVInt(ByteBuffer buf) {
+        byte b = buf.get();
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = buf.get();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+}
@@ -11,13 +11,30 @@ import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.StringTokenizer;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
 
     public int docID;
     public double score = 0;
-    public ArrayList<Integer> offset = new ArrayList<>();
+    /**
+     * The positions of the term in the document. Always read them through
+     * getOffsets(), since for entries read from disk this is null until
+     * they are decoded.
+     */
+    private ArrayList<Integer> offset = new ArrayList<>();
+
+    /**
+     * For entries read from disk: the position stream of the postings list
+     * and where the positions of this entry start in it. The positions are
+     * only decoded when they are asked for, and offset is null until then.
+     */
+    private transient ByteBuffer positionData;
+    private int positionStart;
+    private int tf;
 
     /**
      * PostingsEntries are compared by their score (only relevant
@@ -42,6 +59,47 @@ public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
         this.docID = docID;
     }
 
+    /**
+     * Creates an entry whose positions are still encoded in
+     * <code>positionData</code>, starting at <code>positionStart</code>.
+     */
+    public PostingsEntry(int docID, int tf, ByteBuffer positionData, int positionStart) {
+        this.docID = docID;
+        this.tf = tf;
+        this.positionData = positionData;
+        this.positionStart = positionStart;
+        this.offset = null;
+    }
+
+    /**
+     * Number of occurrences of the term in the document. Does not decode
+     * the positions.
+     */
+    public synchronized int tf() {
+        return offset != null ? offset.size() : tf;
+    }
+
+    /**
+     * Returns the positions of the term in the document, decoding them
+     * first if the entry was read from disk.
+     */
+    public synchronized ArrayList<Integer> getOffsets() {
+        if (offset == null) {
+            offset = PostingsCodec.decodePositions(positionData, positionStart, tf);
+            positionData = null;
+        }
+        return offset;
+    }
+
+    /**
+     * Decodes the positions before the entry is serialized, since the
+     * position stream is not serialized with it.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getOffsets();
+        out.defaultWriteObject();
+    }
+
     public int compareTo(PostingsEntry other) {
         return Double.compare(other.score, score);
     }
@@ -57,11 +115,12 @@ public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
         sb.append("/").append(score).append(":");
         // sb.append(", offsets=").append(offset.toString());
         // sb.append("Offsets: [");
-        for (int i = 0; i < offset.size(); i++) {
+        ArrayList<Integer> offsets = getOffsets();
+        for (int i = 0; i < offsets.size(); i++) {
             if (i > 0) {
                 sb.append(",");
             }
-            sb.append(offset.get(i).toString());
+            sb.append(offsets.get(i).toString());
         }
         sb.append(";");
         return sb.toString();
@@ -7,13 +7,53 @@
 
 package ir;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class PostingsList {
 
     /** The postings list */
     private ArrayList<PostingsEntry> list = new ArrayList<PostingsEntry>();
 
+    /** Number of entries per skip block. */
+    public static final int SKIP_BLOCK = 64;
+
+    /** The largest docID of every block of SKIP_BLOCK entries. */
+    private int[] blockLastDocIDs = new int[0];
+
+    /** The largest term frequency in every block of SKIP_BLOCK entries. */
+    private int[] blockMaxTf = new int[0];
+
+    /** The list size for which the skip data was computed, -1 if it is stale. */
+    private int skipsForSize = 0;
+
+    /**
+     * For lists read from disk: the document stream and the position
+     * stream, and where every block starts in them. The entries of a block
+     * are null until one of them is asked for and the block is decoded.
+     * docData is null once every block is decoded.
+     */
+    private volatile ByteBuffer docData;
+    private ByteBuffer positionData;
+    private int[] blockDocStarts;
+    private int[] blockPositionStarts;
+    private boolean[] blockDecoded;
+    private int blocksLeft;
+
+    /**
+     * For a list joining the lists of several segments: the lists, each
+     * with docIDs above those of the one before, and the index of the first
+     * entry of each in the joined list. Entries are read from the lists
+     * themselves, so their undecoded blocks stay undecoded until needed.
+     * parts is null once the entries are copied into this list.
+     */
+    private PostingsList[] parts;
+    private int[] partStarts;
+    private int partsSize;
+
     /**
      * Create empty postingslist
      */
@@ -21,6 +61,21 @@ public class PostingsList {
 
     }
 
+    /**
+     * Joins lists whose docIDs follow each other, without decoding them.
+     * The lists must not be empty.
+     */
+    public static PostingsList concat(List<PostingsList> lists) {
+        PostingsList joined = new PostingsList();
+        joined.parts = lists.toArray(new PostingsList[lists.size()]);
+        joined.partStarts = new int[joined.parts.length];
+        for (int p = 0; p < joined.parts.length; p++) {
+            joined.partStarts[p] = joined.partsSize;
+            joined.partsSize += joined.parts[p].size();
+        }
+        return joined;
+    }
+
     /**
      * Create a new PostingsList with one PostingsEntry
      * 
@@ -35,14 +90,25 @@ public class PostingsList {
      * Insert a new entry to the list by checking prsence of
      * entry with help of docID first
      * 
+     * Documents are indexed in increasing docID order, so the entry to add
+     * the offset to, if there is one, is the last one, and adding takes
+     * constant time. Other docIDs are looked up in the whole list.
+     * 
      * @param docID
      * @param offset
      */
     public void addEntry(int docID, int offset) {
 
-        PostingsEntry entry = findPostingsEntry(docID);
+        decodeAll();
+        PostingsEntry last = list.isEmpty() ? null : list.get(list.size() - 1);
+        if (last == null || last.docID < docID) {
+            list.add(new PostingsEntry(docID, offset));
+            return;
+        }
+        PostingsEntry entry = last.docID == docID ? last : findPostingsEntry(docID);
         if (entry != null) { // it already exists
-            entry.offset.add(offset);
+            entry.getOffsets().add(offset);
+            skipsForSize = -1; // the tf of the entry grew
         } else {
             list.add(new PostingsEntry(docID, offset));
         }
@@ -53,11 +119,18 @@ public class PostingsList {
      * 
      */
     public int size() {
-        return list.size();
+        return parts != null ? partsSize : list.size();
     }
 
-    /** Returns the ith posting. */
+    /** Returns the ith posting, decoding its block first if needed. */
     public PostingsEntry get(int i) {
+        if (parts != null) {
+            int p = part(i);
+            return parts[p].get(i - partStarts[p]);
+        }
+        if (docData != null) {
+            decodeBlock(i / SKIP_BLOCK);
+        }
         return list.get(i);
     }
 
@@ -66,6 +139,7 @@ public class PostingsList {
      * @param entry entry object
      */
     public void addPersistedEntry(PostingsEntry entry) {
+        decodeAll();
         this.list.add(entry);
     }
 
@@ -79,6 +153,7 @@ public class PostingsList {
      * @return list of entries
      */
     public ArrayList<PostingsEntry> getEntries() {
+        decodeAll();
         return this.list;
     }
 
@@ -89,6 +164,7 @@ public class PostingsList {
      * @return the entry of a token for a given docID
      */
     public PostingsEntry findPostingsEntry(int targetDocID) {
+        decodeAll();
         for (PostingsEntry entry : list) {
             if (entry.docID == targetDocID) {
                 return entry; // Found the desired PostingsEntry
@@ -97,11 +173,186 @@ public class PostingsList {
         return null; // Not found
     }
 
+    /**
+     * Returns the index of the first entry at or after <code>from</code>
+     * whose docID is at least <code>target</code>, or size() if there is
+     * none. Whole blocks whose largest docID is smaller than the target are
+     * skipped without looking at their entries, and for a list read from
+     * disk without decoding them.
+     */
+    public int advance(int from, int target) {
+        if (parts != null) {
+            for (int p = from < partsSize ? part(from) : parts.length; p < parts.length; p++) {
+                PostingsList part = parts[p];
+                if (part.blockLastDocID(part.numBlocks() - 1) < target) {
+                    continue; // The whole list is before the target
+                }
+                return partStarts[p] + part.advance(Math.max(from, partStarts[p]) - partStarts[p], target);
+            }
+            return partsSize;
+        }
+        int size = list.size();
+        if (from >= size || get(from).docID >= target) {
+            return from;
+        }
+        ensureSkips();
+        int block = from / SKIP_BLOCK;
+        if (blockLastDocIDs[block] < target) {
+            block = Arrays.binarySearch(blockLastDocIDs, block + 1, blockLastDocIDs.length, target);
+            if (block < 0) {
+                block = -block - 1;
+            }
+            if (block == blockLastDocIDs.length) {
+                return size;
+            }
+            from = block * SKIP_BLOCK;
+        }
+        while (from < size && get(from).docID < target) {
+            from++;
+        }
+        return from;
+    }
+
+    /** Number of skip blocks. */
+    public int numBlocks() {
+        ensureSkips();
+        return blockLastDocIDs.length;
+    }
+
+    /** The largest docID in a skip block. */
+    public int blockLastDocID(int block) {
+        ensureSkips();
+        return blockLastDocIDs[block];
+    }
+
+    /**
+     * The largest term frequency in a skip block, an upper bound on the
+     * score any document in the block can get from this term.
+     */
+    public int blockMaxTf(int block) {
+        ensureSkips();
+        return blockMaxTf[block];
+    }
+
+    /**
+     * An upper bound on the number of positions in the list. For blocks
+     * that are not decoded, it is the size of their part of the position
+     * stream, in which every position takes at least one byte.
+     */
+    synchronized int maxPositions() {
+        if (parts != null) {
+            int positions = 0;
+            for (PostingsList part : parts) {
+                positions += part.maxPositions();
+            }
+            return positions;
+        }
+        if (docData == null) {
+            int positions = 0;
+            for (PostingsEntry entry : list) {
+                positions += entry.tf();
+            }
+            return positions;
+        }
+        return positionData.limit();
+    }
+
+    /**
+     * Makes this empty list a list of <code>size</code> entries read from
+     * disk, whose blocks are decoded from the streams when first needed.
+     */
+    void setEncoded(int size, ByteBuffer docData, int[] blockDocStarts, ByteBuffer positionData,
+            int[] blockPositionStarts, int[] blockLastDocIDs, int[] blockMaxTf) {
+        list = new ArrayList<PostingsEntry>(Collections.nCopies(size, (PostingsEntry) null));
+        this.blockDocStarts = blockDocStarts;
+        this.positionData = positionData;
+        this.blockPositionStarts = blockPositionStarts;
+        this.blockLastDocIDs = blockLastDocIDs;
+        this.blockMaxTf = blockMaxTf;
+        blockDecoded = new boolean[blockLastDocIDs.length];
+        blocksLeft = blockLastDocIDs.length;
+        skipsForSize = size;
+        this.docData = blocksLeft > 0 ? docData : null;
+    }
+
+    /**
+     * Decodes a block of a list read from disk, unless it is decoded.
+     */
+    private synchronized void decodeBlock(int block) {
+        if (docData == null || blockDecoded[block]) {
+            return;
+        }
+        int from = block * SKIP_BLOCK;
+        PostingsCodec.decodeBlock(docData, blockDocStarts[block], block == 0 ? 0 : blockLastDocIDs[block - 1],
+                positionData, blockPositionStarts[block], list, from, Math.min(list.size(), from + SKIP_BLOCK));
+        blockDecoded[block] = true;
+        if (--blocksLeft == 0) {
+            // Written last, so that readers seeing null see all entries
+            positionData = null;
+            blockDocStarts = null;
+            blockPositionStarts = null;
+            blockDecoded = null;
+            docData = null;
+        }
+    }
+
+    /** Returns the part of a joined list holding the ith entry. */
+    private int part(int i) {
+        int p = Arrays.binarySearch(partStarts, i);
+        return p >= 0 ? p : -p - 2;
+    }
+
+    /**
+     * Copies the entries of the parts of a joined list into this list,
+     * which decodes them.
+     */
+    private void joinParts() {
+        if (parts == null) {
+            return;
+        }
+        ArrayList<PostingsEntry> joined = new ArrayList<PostingsEntry>(partsSize);
+        for (PostingsList part : parts) {
+            joined.addAll(part.getEntries());
+        }
+        list = joined;
+        skipsForSize = -1;
+        parts = null;
+        partStarts = null;
+    }
+
+    /** Decodes all blocks not yet decoded. */
+    private void decodeAll() {
+        joinParts();
+        for (int block = 0; docData != null; block++) {
+            decodeBlock(block);
+        }
+    }
+
+    /**
+     * Recomputes the skip data if entries have been added since it was
+     * last computed.
+     */
+    private void ensureSkips() {
+        joinParts();
+        if (skipsForSize == list.size()) {
+            return;
+        }
+        int numBlocks = (list.size() + SKIP_BLOCK - 1) / SKIP_BLOCK;
+        blockLastDocIDs = new int[numBlocks];
+        blockMaxTf = new int[numBlocks];
+        for (int i = 0; i < list.size(); i++) {
+            int block = i / SKIP_BLOCK;
+            blockLastDocIDs[block] = list.get(i).docID;
+            blockMaxTf[block] = Math.max(blockMaxTf[block], list.get(i).tf());
+        }
+        skipsForSize = list.size();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < list.size(); i++) {
-            sb.append(list.get(i).toString());
+        for (int i = 0; i < size(); i++) {
+            sb.append(get(i).toString());
         }
         sb.append("\n");
         return sb.toString();
@@ -0,0 +1,174 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the postings lists of a commit to the data file, in the order in
+ * which they are added.
+ *
+ * The lists are collected in batches of BATCH_SIZE terms. Every batch is
+ * encoded by a pool of worker threads, while a single writer appends the
+ * encoded batches to the file in order, each with one gathering write. At
+ * most a few batches per worker are in flight, so the memory used stays
+ * bounded however many terms there are.
+ */
+public class PostingsWriter implements AutoCloseable {
+
+    /** Number of terms encoded and written together. */
+    static final int BATCH_SIZE = 1024;
+
+    /** Number of batches per worker that may wait to be written. */
+    static final int PENDING_PER_WORKER = 2;
+
+    final FileChannel channel;
+    final ExecutorService encoders;
+    final int maxPending;
+
+    /** Encoded batches waiting to be written, oldest first. */
+    final ArrayDeque<Batch> pending = new ArrayDeque<Batch>();
+
+    ArrayList<String> batchTerms = new ArrayList<String>();
+    ArrayList<PostingsList> batchLists = new ArrayList<PostingsList>();
+
+    /** The written terms and their dictionary entries, in the order written. */
+    final ArrayList<String> terms = new ArrayList<String>();
+    final ArrayList<PersistentHashedIndex.Entry> entries = new ArrayList<PersistentHashedIndex.Entry>();
+
+    /** Where the next list will be written. */
+    long free;
+
+    /** A batch of terms and the future encoding of their postings lists. */
+    static class Batch {
+        final ArrayList<String> terms;
+        final Future<ByteBuffer[]> encoded;
+
+        Batch(ArrayList<String> terms, Future<ByteBuffer[]> encoded) {
+            this.terms = terms;
+            this.encoded = encoded;
+        }
+    }
+
+    /**
+     * Creates a writer appending to <code>channel</code> from position
+     * <code>start</code>, with one encoding thread per processor.
+     */
+    public PostingsWriter(FileChannel channel, long start) {
+        this.channel = channel;
+        this.free = start;
+        int workers = Runtime.getRuntime().availableProcessors();
+        encoders = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "postings-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maxPending = PENDING_PER_WORKER * workers;
+    }
+
+    /**
+     * Adds the postings list of a term. Terms must be added in sorted order.
+     */
+    public void add(String term, PostingsList list) throws IOException {
+        batchTerms.add(term);
+        batchLists.add(list);
+        if (batchTerms.size() == BATCH_SIZE) {
+            submit();
+        }
+    }
+
+    /**
+     * Hands the current batch to the encoders, first writing the oldest
+     * batch if too many are waiting.
+     */
+    private void submit() throws IOException {
+        final ArrayList<PostingsList> lists = batchLists;
+        pending.add(new Batch(batchTerms, encoders.submit(() -> {
+            ByteBuffer[] buffers = new ByteBuffer[lists.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = PostingsCodec.encode(lists.get(i));
+            }
+            return buffers;
+        })));
+        batchTerms = new ArrayList<String>();
+        batchLists = new ArrayList<PostingsList>();
+        while (pending.size() > maxPending) {
+            write(pending.poll());
+        }
+    }
+
+    /**
+     * Waits for a batch to be encoded and appends it to the file.
+     */
+    private void write(Batch batch) throws IOException {
+        ByteBuffer[] buffers;
+        try {
+            buffers = batch.encoded.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding postings", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not encode postings", e.getCause());
+        }
+        long pointer = free;
+        for (int i = 0; i < buffers.length; i++) {
+            int size = buffers[i].remaining();
+            String term = batch.terms.get(i);
+            terms.add(term);
+            entries.add(new PersistentHashedIndex.Entry(PerfectHash.fingerprint(term), pointer, size));
+            pointer += size;
+        }
+        channel.position(free);
+        int first = 0;
+        while (first < buffers.length) {
+            channel.write(buffers, first, buffers.length - first);
+            while (first < buffers.length && !buffers[first].hasRemaining()) {
+                first++;
+            }
+        }
+        free = pointer;
+    }
+
+    /**
+     * Writes all remaining lists.
+     *
+     * @return The position after the last list.
+     */
+    public long finish() throws IOException {
+        if (!batchTerms.isEmpty()) {
+            submit();
+        }
+        while (!pending.isEmpty()) {
+            write(pending.poll());
+        }
+        return free;
+    }
+
+    /** The written terms, in the order written. */
+    public ArrayList<String> terms() {
+        return terms;
+    }
+
+    /** The dictionary entries of the written terms, in the order written. */
+    public ArrayList<PersistentHashedIndex.Entry> entries() {
+        return entries;
+    }
+
+    /** Stops the encoding threads. */
+    public void close() {
+        encoders.shutdownNow();
+    }
+}
@@ -211,6 +211,9 @@ public class SearchGUI extends JFrame {
 
         Action quit = new AbstractAction() {
             public void actionPerformed( ActionEvent e ) {
+                if ( engine.index instanceof PersistentHashedIndex ) {
+                    ((PersistentHashedIndex) engine.index).printCacheStatistics();
+                }
                 System.exit( 0 );
             }
             };
@@ -302,7 +305,7 @@ public class SearchGUI extends JFrame {
         box = new JCheckBox[maxResultsToDisplay];
         int i;
         for ( i=0; i<results.size() && i<maxResultsToDisplay; i++ ) {
-            String description = i + ". " + displayableFileName( engine.index.docNames.get( results.get(i).docID ));
+            String description = i + ". " + displayableFileName( engine.index.docName( results.get(i).docID ));
             if ( queryType == QueryType.RANKED_QUERY ) {
                 description += "   " + String.format( "%.5f", results.get(i).score );
             }
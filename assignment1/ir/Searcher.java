@@ -38,6 +38,10 @@ public class Searcher {
         //
         // REPLACE THE STATEMENT BELOW WITH YOUR CODE
         //
+        if (index instanceof ShardedIndex) {
+            // Every shard answers the query on its own documents
+            return ((ShardedIndex) index).search(query, queryType, rankingType, normType, kgIndex);
+        }
         if (query.queryterm.size() < 2) { // empty or one term
             return extractPostingList(query, 0);
         } else {
@@ -67,41 +71,47 @@ public class Searcher {
     }
 
     /**
-     * Extract postingslist of terms from index
+     * Extract postingslist of terms from index. A term ending with '*' matches
+     * every term with that prefix when the index keeps its terms sorted.
      * @param query query term
      * @param termIndex index of query term in list of queryterms
      * @return postingslist of term
      */
     private PostingsList extractPostingList(Query query, int termIndex) {
-        return index.getPostings(query.queryterm.get(termIndex).term);
+        String term = query.queryterm.get(termIndex).term;
+        if (term.length() > 1 && term.endsWith("*") && index instanceof PersistentHashedIndex) {
+            return ((PersistentHashedIndex) index).getPrefixPostings(term.substring(0, term.length() - 1));
+        }
+        return index.getPostings(term);
     }
 
     /**
-     * Find common entries with help of docID for two postingslists
+     * Find common entries with help of docID for two postingslists. Each list
+     * leaps to the docID of the other one, skipping whole blocks that cannot
+     * contain it.
      * @param pl1 first postingslist
      * @param pl2 second postingslist
      * @return postinglist with common entries in pl1 & pl2
      */
     public PostingsList intersect(PostingsList pl1, PostingsList pl2) {
         PostingsList answer = new PostingsList();
-        ListIterator<PostingsEntry> itr1 = pl1.getEntries().listIterator();
-        ListIterator<PostingsEntry> itr2 = pl2.getEntries().listIterator();
-
-        while (itr1.hasNext() && itr2.hasNext()) {
-            PostingsEntry pe1 = itr1.next();
-            PostingsEntry pe2 = itr2.next();
-
-            while (true) {
-                if (pe1.docID == pe2.docID) {
-                    answer.getEntries().add(new PostingsEntry(pe1.docID));
-                    break;
-                } else if (pe1.docID < pe2.docID && itr1.hasNext()) {
-                    pe1 = itr1.next();
-                } else if (pe1.docID > pe2.docID && itr2.hasNext()) {
-                    pe2 = itr2.next();
-                } else {
-                    return answer; // No common elements left
-                }
+        if (pl1 == null || pl2 == null) {
+            return answer; // A term that is not in the index matches nothing
+        }
+        int i = 0;
+        int j = 0;
+
+        while (i < pl1.size() && j < pl2.size()) {
+            int docID1 = pl1.get(i).docID;
+            int docID2 = pl2.get(j).docID;
+            if (docID1 == docID2) {
+                answer.getEntries().add(new PostingsEntry(docID1));
+                i++;
+                j++;
+            } else if (docID1 < docID2) {
+                i = pl1.advance(i, docID2);
+            } else {
+                j = pl2.advance(j, docID1);
             }
         }
 
@@ -117,26 +127,31 @@ public class Searcher {
      */
     private PostingsList positionalIntersect(PostingsList pl1, PostingsList pl2) {
         PostingsList answer = new PostingsList();
-        ListIterator<PostingsEntry> itr1 = pl1.getEntries().listIterator();
-        ListIterator<PostingsEntry> itr2 = pl2.getEntries().listIterator();
-
-        // Check if both lists have elements
-        if (!itr1.hasNext() || !itr2.hasNext())
-            return answer;
-
-        PostingsEntry itr1Value = itr1.next();
-        PostingsEntry itr2Value = itr2.next();
-
-        while (true) {
-            if (itr1Value.docID == itr2Value.docID) {
-                ArrayList<Integer> pp1 = itr1Value.offset;
-                ArrayList<Integer> pp2 = itr2Value.offset;
+        if (pl1 == null || pl2 == null) {
+            return answer; // A term that is not in the index matches nothing
+        }
+        int i = 0;
+        int j = 0;
+
+        while (i < pl1.size() && j < pl2.size()) {
+            PostingsEntry itr1Value = pl1.get(i);
+            PostingsEntry itr2Value = pl2.get(j);
+            if (itr1Value.docID < itr2Value.docID) {
+                i = pl1.advance(i, itr2Value.docID);
+            } else if (itr1Value.docID > itr2Value.docID) {
+                j = pl2.advance(j, itr1Value.docID);
+            } else {
+                i++;
+                j++;
+                // Positions are only decoded for documents containing both terms
+                ArrayList<Integer> pp1 = itr1Value.getOffsets();
+                ArrayList<Integer> pp2 = itr2Value.getOffsets();
                 ListIterator<Integer> itrOffset1 = pp1.listIterator();
                 ListIterator<Integer> itrOffset2 = pp2.listIterator();
 
                 // Check if both offset lists have elements
                 if (!itrOffset1.hasNext() || !itrOffset2.hasNext())
-                    break;
+                    continue;
 
                 // Create iterators for the offset lists
                 Integer itrOffset1Value = itrOffset1.next();
@@ -165,25 +180,6 @@ public class Searcher {
                             break;
                     }
                 }
-                if (itr1.hasNext())
-                    itr1Value = itr1.next();
-                else
-                    break;
-
-                if (itr2.hasNext())
-                    itr2Value = itr2.next();
-                else
-                    break;
-            } else if (itr1Value.docID < itr2Value.docID) {
-                if (itr1.hasNext())
-                    itr1Value = itr1.next();
-                else
-                    break;
-            } else {
-                if (itr2.hasNext())
-                    itr2Value = itr2.next();
-                else
-                    break;
             }
         }
 
@@ -0,0 +1,320 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ *   Implements an inverted index as a list of immutable segments on disk.
+ *
+ *   Every segment is a PersistentHashedIndex in its own directory, holding
+ *   a contiguous range of docIDs. Newly indexed documents are committed as a
+ *   new segment, so adding documents only costs as much as the documents
+ *   added. Searches combine the postings of all segments.
+ *
+ *   A background thread merges segments of similar size (a tiered merge
+ *   policy): when MERGE_FACTOR adjacent segments belong to the same size
+ *   tier, they are merged into one segment of the next tier.
+ */
+public class SegmentedIndex implements Index {
+
+    /** The file listing the segments, stored in the index directory. */
+    public static final String SEGMENTS_FNAME = "segments";
+
+    /** Number of segments of the same tier that are merged at once. */
+    static final int MERGE_FACTOR = 4;
+
+    /** Segments whose data file is smaller than this belong to the lowest tier. */
+    static final long MIN_TIER_BYTES = 1L << 20;
+
+    /** The directory holding the segment directories. */
+    final String indexDir;
+
+    /** If true, the segments serve lookups from memory-mapped files. */
+    final boolean memoryMapped;
+
+    /** The committed segments, in docID order. Replaced, never modified. */
+    volatile ArrayList<PersistentHashedIndex> segments = new ArrayList<PersistentHashedIndex>();
+
+    /**
+     * Held for reading while segments are looked up, and for writing while
+     * merged segments are closed.
+     */
+    final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    /** The segment receiving new documents, or null. */
+    PersistentHashedIndex openSegment;
+
+    /** The number of the next segment directory. */
+    int nextSegment = 0;
+
+    /** Runs the merges in the background, one at a time. */
+    final ExecutorService merger = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "segment-merger");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SegmentedIndex() {
+        this(PersistentHashedIndex.INDEXDIR, false);
+    }
+
+    /**
+     * Constructor. Opens all segments listed in the segments file.
+     */
+    public SegmentedIndex(String indexDir, boolean memoryMapped) {
+        this.indexDir = indexDir;
+        this.memoryMapped = memoryMapped;
+        File file = new File(indexDir, SEGMENTS_FNAME);
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] data = line.split(";");
+                PersistentHashedIndex segment = new PersistentHashedIndex(indexDir + "/" + data[0], memoryMapped);
+                segment.firstDocID = Integer.parseInt(data[1]);
+                segment.lastDocID = Integer.parseInt(data[2]);
+                segments.add(segment);
+                nextSegment = Math.max(nextSegment, segmentNumber(data[0]) + 1);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        System.err.println(segments.size() + " segments opened");
+    }
+
+    /**
+     * Returns the first docID that is not used by any committed segment.
+     */
+    public int nextDocID() {
+        ArrayList<PersistentHashedIndex> current = segments;
+        return current.isEmpty() ? 0 : current.get(current.size() - 1).lastDocID + 1;
+    }
+
+    /**
+     * Inserts this token in the segment receiving new documents.
+     */
+    public void insert(String token, int docID, int offset) {
+        if (openSegment == null) {
+            openSegment = createSegment();
+            openSegment.firstDocID = nextDocID();
+        }
+        openSegment.insert(token, docID, offset);
+    }
+
+    /**
+     * Returns the postings for a specific token, combined over all
+     * segments, or null if no segment contains the token. The lists of the
+     * segments are joined without decoding them, and lookups run in
+     * parallel; they only keep a merge from closing the segments they read.
+     */
+    public PostingsList getPostings(String token) {
+        ArrayList<PostingsList> lists = new ArrayList<PostingsList>();
+        closeLock.readLock().lock();
+        try {
+            for (PersistentHashedIndex segment : segments) {
+                PostingsList list = segment.getPostings(token);
+                if (list != null && list.size() > 0) {
+                    lists.add(list);
+                }
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        if (lists.isEmpty()) {
+            return null;
+        }
+        return lists.size() == 1 ? lists.get(0) : PostingsList.concat(lists);
+    }
+
+    /**
+     * Returns the name of a document, looked up in the segment holding it.
+     */
+    public String docName(int docID) {
+        PersistentHashedIndex segment = segmentOf(docID);
+        return segment != null ? segment.docName(docID) : docNames.get(docID);
+    }
+
+    /**
+     * Returns the length of a document, looked up in the segment holding it.
+     */
+    public int docLength(int docID) {
+        PersistentHashedIndex segment = segmentOf(docID);
+        return segment != null ? segment.docLength(docID) : Index.super.docLength(docID);
+    }
+
+    /**
+     * Returns the committed segment whose docID range holds a docID, or null.
+     */
+    private PersistentHashedIndex segmentOf(int docID) {
+        for (PersistentHashedIndex segment : segments) {
+            if (docID >= segment.firstDocID && docID <= segment.lastDocID) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Commits the newly indexed documents as a new segment, and starts
+     * merging segments in the background if a tier is full.
+     */
+    public void cleanup() {
+        if (openSegment == null) {
+            return;
+        }
+        int lastDocID = openSegment.firstDocID - 1;
+        for (int docID : docNames.keySet()) {
+            lastDocID = Math.max(lastDocID, docID);
+        }
+        openSegment.lastDocID = lastDocID;
+        openSegment.cleanup();
+        synchronized (this) {
+            ArrayList<PersistentHashedIndex> updated = new ArrayList<PersistentHashedIndex>(segments);
+            updated.add(openSegment);
+            segments = updated;
+            writeSegments();
+        }
+        openSegment = null;
+        merger.submit(this::mergeTiers);
+    }
+
+    /**
+     * Merges runs of adjacent segments in the same tier until no tier holds
+     * MERGE_FACTOR adjacent segments. Nothing waits for the result of the
+     * merger thread, so a failed merge is reported here.
+     */
+    void mergeTiers() {
+        try {
+            mergeRuns();
+        } catch (RuntimeException e) {
+            System.err.println("Merging segments failed:");
+            e.printStackTrace();
+        }
+    }
+
+    private void mergeRuns() {
+        while (true) {
+            ArrayList<PersistentHashedIndex> current = segments;
+            int start = findMergeRun(current);
+            if (start < 0) {
+                return;
+            }
+            List<PersistentHashedIndex> run = new ArrayList<PersistentHashedIndex>(
+                    current.subList(start, start + MERGE_FACTOR));
+            PersistentHashedIndex merged = createSegment();
+            merged.firstDocID = run.get(0).firstDocID;
+            merged.lastDocID = run.get(run.size() - 1).lastDocID;
+            System.err.println("Merging " + run.size() + " segments into " + merged.indexDir);
+            merged.writeMerged(run);
+
+            synchronized (this) {
+                ArrayList<PersistentHashedIndex> updated = new ArrayList<PersistentHashedIndex>(segments);
+                int at = updated.indexOf(run.get(0));
+                updated.subList(at, at + run.size()).clear();
+                updated.add(at, merged);
+                segments = updated;
+                writeSegments();
+            }
+            // Lookups that started before the swap may still read the old segments
+            closeLock.writeLock().lock();
+            try {
+                for (PersistentHashedIndex segment : run) {
+                    segment.close();
+                    deleteDirectory(new File(segment.indexDir));
+                }
+            } finally {
+                closeLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the start of the first run of MERGE_FACTOR adjacent segments
+     * in the same tier, or -1 if there is none.
+     */
+    static int findMergeRun(List<PersistentHashedIndex> segments) {
+        int runStart = 0;
+        for (int i = 1; i <= segments.size(); i++) {
+            if (i == segments.size() || tier(segments.get(i)) != tier(segments.get(runStart))) {
+                runStart = i;
+            } else if (i - runStart + 1 == MERGE_FACTOR) {
+                return runStart;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the size tier of a segment: tier t holds segments smaller than
+     * MIN_TIER_BYTES * MERGE_FACTOR^t.
+     */
+    static int tier(PersistentHashedIndex segment) {
+        long limit = MIN_TIER_BYTES;
+        int tier = 0;
+        while (segment.dataSize() >= limit) {
+            limit *= MERGE_FACTOR;
+            tier++;
+        }
+        return tier;
+    }
+
+    /**
+     * Creates an empty segment in a new directory. Called by both the
+     * indexing thread and the merger thread.
+     */
+    private synchronized PersistentHashedIndex createSegment() {
+        String dir = indexDir + "/seg" + nextSegment++;
+        new File(dir).mkdirs();
+        return new PersistentHashedIndex(dir, memoryMapped);
+    }
+
+    /**
+     * Writes the segments file: one line per segment with its directory and
+     * its first and last docID. The file is replaced atomically.
+     */
+    private void writeSegments() {
+        File tmp = new File(indexDir, SEGMENTS_FNAME + ".tmp");
+        try (PrintWriter out = new PrintWriter(new FileWriter(tmp))) {
+            for (PersistentHashedIndex segment : segments) {
+                out.println(new File(segment.indexDir).getName() + ";" + segment.firstDocID + ";" + segment.lastDocID);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), new File(indexDir, SEGMENTS_FNAME).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static int segmentNumber(String name) {
+        return Integer.parseInt(name.substring("seg".length()));
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
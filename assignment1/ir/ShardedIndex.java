@@ -0,0 +1,218 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/*
+ *   Implements an inverted index partitioned by document over a number of
+ *   shards.
+ *
+ *   Every shard is a PersistentHashedIndex in its own directory, and holds
+ *   the documents whose docID modulo the number of shards is the number of
+ *   the shard. A query is run on all shards at the same time, each by its
+ *   own Searcher, and the answers of the shards are merged. Since a document
+ *   lives in exactly one shard, intersection and phrase queries can be
+ *   answered shard by shard.
+ */
+public class ShardedIndex implements Index {
+
+    /** The file holding the number of shards, stored in the index directory. */
+    public static final String SHARDS_FNAME = "shards";
+
+    /** The shards, shard i holding the docIDs d with d % shards.length == i. */
+    final PersistentHashedIndex[] shards;
+
+    /** Runs the work on the shards in parallel. */
+    final ExecutorService workers;
+
+    public ShardedIndex() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardedIndex(int numShards) {
+        this(PersistentHashedIndex.INDEXDIR, numShards, false);
+    }
+
+    /**
+     * Constructor. Opens, or creates, the shards in the directories shard0,
+     * shard1, ... of <code>indexDir</code>. An existing index is opened with
+     * the number of shards it was created with, whatever
+     * <code>numShards</code> is, since the docIDs are spread over the shards
+     * by that number.
+     */
+    public ShardedIndex(String indexDir, int numShards, boolean memoryMapped) {
+        numShards = numShards(indexDir, numShards);
+        shards = new PersistentHashedIndex[numShards];
+        for (int i = 0; i < numShards; i++) {
+            String dir = indexDir + "/shard" + i;
+            new File(dir).mkdirs();
+            shards[i] = new PersistentHashedIndex(dir, memoryMapped);
+            shards[i].numShards = numShards;
+            shards[i].shard = i;
+        }
+        workers = Executors.newFixedThreadPool(numShards, r -> {
+            Thread thread = new Thread(r, "shard-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the number of shards of the index in <code>indexDir</code>,
+     * read from its shards file. If there is no index yet, the shards file
+     * is written with <code>numShards</code>. Fails if the shard
+     * directories don't match the number of shards.
+     */
+    static int numShards(String indexDir, int numShards) {
+        File file = new File(indexDir, SHARDS_FNAME);
+        try {
+            if (file.exists()) {
+                try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+                    int stored = Integer.parseInt(br.readLine().trim());
+                    if (stored != numShards) {
+                        System.err.println("The index has " + stored + " shards, opening it with " + stored
+                                + " instead of " + numShards);
+                    }
+                    numShards = stored;
+                }
+            } else {
+                new File(indexDir).mkdirs();
+                try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+                    out.println(numShards);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read or write " + file, e);
+        }
+        String[] dirs = new File(indexDir).list((dir, name) -> name.matches("shard[0-9]+"));
+        for (String dir : dirs == null ? new String[0] : dirs) {
+            if (Integer.parseInt(dir.substring("shard".length())) >= numShards) {
+                throw new IllegalStateException("Found " + dir + " in " + indexDir + ", which has " + numShards
+                        + " shards");
+            }
+        }
+        return numShards;
+    }
+
+    /** Returns the shard holding a document. */
+    PersistentHashedIndex shardOf(int docID) {
+        return shards[docID % shards.length];
+    }
+
+    /**
+     * Inserts this token in the shard of the document.
+     */
+    public void insert(String token, int docID, int offset) {
+        shardOf(docID).insert(token, docID, offset);
+    }
+
+    /**
+     * Returns the postings for a specific token, looked up in all shards
+     * in parallel, or null if no shard contains the token.
+     */
+    public PostingsList getPostings(String token) {
+        return merge(onAllShards(shard -> shard.getPostings(token)), false);
+    }
+
+    /**
+     * Runs a query on all shards in parallel, each with its own Searcher,
+     * and merges their answers.
+     */
+    public PostingsList search(Query query, QueryType queryType, RankingType rankingType,
+            NormalizationType normType, KGramIndex kgIndex) {
+        PostingsList answer = merge(onAllShards(
+                shard -> new Searcher(shard, kgIndex).search(query, queryType, rankingType, normType)),
+                queryType == QueryType.RANKED_QUERY);
+        return answer == null ? new PostingsList() : answer;
+    }
+
+    public String docName(int docID) {
+        return shardOf(docID).docName(docID);
+    }
+
+    public int docLength(int docID) {
+        return shardOf(docID).docLength(docID);
+    }
+
+    /**
+     * Commits all shards in parallel.
+     */
+    public void cleanup() {
+        onAllShards(shard -> {
+            shard.cleanup();
+            return null;
+        });
+        System.err.println(shards.length + " shards written");
+    }
+
+    /**
+     * Applies a function to every shard in parallel and returns the
+     * results, in shard order.
+     */
+    <T> List<T> onAllShards(Function<PersistentHashedIndex, T> task) {
+        ArrayList<Future<T>> futures = new ArrayList<Future<T>>();
+        for (PersistentHashedIndex shard : shards) {
+            futures.add(workers.submit(() -> task.apply(shard)));
+        }
+        ArrayList<T> results = new ArrayList<T>();
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(null);
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Merges the answers of the shards. The shards hold disjoint sets of
+     * documents, so the entries are only put in order: by decreasing score
+     * for ranked answers, and by docID otherwise. Returns null if no shard
+     * has an answer.
+     */
+    static PostingsList merge(List<PostingsList> answers, boolean ranked) {
+        PostingsList merged = null;
+        for (PostingsList answer : answers) {
+            if (answer == null) {
+                continue;
+            }
+            if (merged == null) {
+                merged = new PostingsList();
+            }
+            merged.getEntries().addAll(answer.getEntries());
+        }
+        if (merged != null) {
+            if (ranked) {
+                merged.getEntries().sort(null);
+            } else {
+                merged.getEntries().sort(Comparator.comparingInt(entry -> entry.docID));
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the postings lists of an index, or part of an index, in sorted term
+ * order. Several readers are merged with a priority queue: readers are
+ * ordered by their current term, and readers on the same term by their
+ * number, so that a lower number must mean smaller docIDs.
+ */
+public abstract class SortedTermReader implements Comparable<SortedTermReader>, Closeable {
+
+    /** The position of this reader in docID order. */
+    final int number;
+
+    /** The current term. */
+    String term;
+
+    SortedTermReader(int number) {
+        this.number = number;
+    }
+
+    /**
+     * Moves to the next term. Returns false when there are no more terms.
+     */
+    public abstract boolean next() throws IOException;
+
+    /** Returns the postings list of the current term. */
+    public abstract PostingsList postings() throws IOException;
+
+    public int compareTo(SortedTermReader other) {
+        int c = term.compareTo(other.term);
+        return c != 0 ? c : Integer.compare(number, other.number);
+    }
+
+    public void close() throws IOException {
+    }
+}
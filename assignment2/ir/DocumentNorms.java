@@ -0,0 +1,84 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Computes, stores and loads the Euclidean lengths of the tf-idf vectors of
+ * all documents, used for Euclidean length normalization.
+ *
+ * The lengths are computed from the finished postings lists in one pass,
+ * without reading the documents again: every posting adds the square of its
+ * tf-idf weight to the length of its document. They are stored in a binary
+ * file holding the number of documents followed by one double per docID.
+ */
+public class DocumentNorms {
+
+    /** The file holding the lengths. */
+    public static final String NORMS_FNAME = "euclideanLength.bin";
+
+    /**
+     * Computes the Euclidean length of every document in the index, for a
+     * collection of <code>collectionSize</code> documents whose docIDs are
+     * smaller than <code>numDocIDs</code>. Entry i of the result holds the
+     * length of document i.
+     */
+    public static double[] compute(Map<String, PostingsList> index, int collectionSize, int numDocIDs) {
+        double[] norms = new double[numDocIDs];
+        for (PostingsList list : index.values()) {
+            double idf = Math.log((double) collectionSize / (double) list.size());
+            for (int i = 0; i < list.size(); i++) {
+                PostingsEntry entry = list.get(i);
+                double weight = entry.offset.size() * idf;
+                norms[entry.docID] += weight * weight;
+            }
+        }
+        for (int docID = 0; docID < norms.length; docID++) {
+            norms[docID] = Math.sqrt(norms[docID]);
+        }
+        return norms;
+    }
+
+    /**
+     * Writes the lengths to file.
+     */
+    public static void write(String fileName, double[] norms) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(norms.length);
+            for (double norm : norms) {
+                out.writeDouble(norm);
+            }
+        }
+    }
+
+    /**
+     * Reads lengths written by <code>write</code>. Returns null if the file
+     * doesn't exist.
+     */
+    public static double[] read(String fileName) throws IOException {
+        File file = new File(fileName);
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            double[] norms = new double[buffer.getInt()];
+            DoubleBuffer doubles = buffer.asDoubleBuffer();
+            doubles.get(norms);
+            return norms;
+        }
+    }
+}
@@ -8,21 +8,12 @@
 package ir;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import ir.Query.QueryTerm;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.nio.charset.StandardCharsets;
 
 /**
  * This is the main class for the search engine.
@@ -71,8 +62,6 @@ public class Engine {
     /** For persistent indexes, we might not need to do any indexing. */
     boolean is_indexing = true;
 
-    int docCounter = 0;
-
     /* ----------------------------------------------- */
 
     /**
@@ -85,7 +74,6 @@ public class Engine {
         searcher = new Searcher(index, kgIndex);
         gui = new SearchGUI(this);
         gui.init();
-        boolean calculateEucLength = false;
         /*
          * Calls the indexer to index the chosen directory structure.
          * Access to the index is synchronized since we don't want to
@@ -100,19 +88,16 @@ public class Engine {
                     File dokDir = new File(dirNames.get(i));
                     indexer.processFiles(dokDir, is_indexing);
                 }
-                if (calculateEucLength) {
-                    System.out.println("Calculating euclidean length of all docs!");
-                    calculateEuclideanLength(new File(dirNames.get(0)));
-                    writeEuclideanLengthToFile();
-                    System.out.println("Finish writing euclidean length of all docs to local file!");
-                } else {
-                    readDataFromFile();
-                }
                 long elapsedTime = System.currentTimeMillis() - startTime;
                 gui.displayInfoText(String.format("Indexing done in %.1f seconds.", elapsedTime / 1000.0));
+                // Also computes the euclidean lengths of the documents
                 index.cleanup();
+                if (index instanceof HashedIndex) {
+                    searcher.docNorms = ((HashedIndex) index).docNorms;
+                }
             }
         } else {
+            readDocumentNorms();
             gui.displayInfoText("Index is loaded from disk");
         }
     }
@@ -156,92 +141,14 @@ public class Engine {
     }
 
     /**
-     * Calculate the euclidean length of all documents in the corpus
-     * Result is saved in a hashmap<String, Double>
-     * 
-     * @return
-     */
-    private void calculateEuclideanLength(File f) {
-        if (f.canRead()) {
-            if (f.isDirectory()) {
-                String[] fs = f.list();
-                // an IO error could occur
-                if (fs != null) {
-                    for (int i = 0; i < fs.length; i++) {
-                        calculateEuclideanLength(new File(f, fs[i]));
-                    }
-                }
-            } else {
-                int docID = docCounter++;
-                try {
-                    Reader reader = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8);
-                    Tokenizer tok = new Tokenizer(reader, true, false, true, patterns_file);
-                    HashMap<String, Integer> termFreqForCurrentDoc = new HashMap<>();
-                    while (tok.hasMoreTokens()) {
-                        String token = tok.nextToken();
-                        termFreqForCurrentDoc.merge(token, 1, Integer::sum);
-                    }
-                    reader.close();
-                    int collectionSize = index.docNames.size();
-                    double sumOfResults = 0.0;
-                    for (String term : termFreqForCurrentDoc.keySet()) {
-                        int termFreq = termFreqForCurrentDoc.get(term);
-                        double documentFrequency = indexer.documentFrequency.get(term);
-                        double idf = Math.log((double) collectionSize / (double) documentFrequency);
-                        sumOfResults += (termFreq * idf) * (termFreq * idf);
-                    }
-                    searcher.docsEucLength.put(docID, Math.sqrt(sumOfResults));
-                } catch (IOException e) {
-                    System.err.println("Warning: IOException during indexing.");
-                }
-            }
-        }
-    }
-
-    /**
-     * Store in a file euclidean length of every word in a doc
-     * 
-     * @param filenameDir
-     * @param docID
-     * @param euclideanLength
-     */
-    private void writeEuclideanLengthToFile() {
-        // Write Euclidean length to file
-        String fileName = "euclideanLength.txt";
-        System.out.println("Writing euclidean length of every doc to a " + fileName);
-        // String docTitle = Paths.get(filenameDir).getFileName().toString();
-        try (FileWriter writer = new FileWriter(fileName, true)) {
-            for (Map.Entry<Integer, Double> entry : searcher.docsEucLength.entrySet()) {
-                writer.write(entry.getKey() + "," + entry.getValue() + "\n");
-            }
-        } catch (IOException e) {
-            System.err.println("Error writing Euclidean length to file: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Reads euclidean length of docs from euclideanLength.txt and stores data in
-     * hashmap in searcher
-     * 
-     * @param fileName
-     * @param docIDLengthMap
+     * Loads the euclidean lengths of the documents, stored in binary by the
+     * index when it was built, into the searcher
      */
-    public void readDataFromFile() {
+    private void readDocumentNorms() {
         try {
-            System.err.println("Reading euclidean length of documents from euclideanLength.txt");
-            String fileName = "euclideanLength.txt";
-            BufferedReader reader = new BufferedReader(new FileReader(fileName));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Split the line by comma and semicolon
-                String[] parts = line.split("[,]");
-                int docID = Integer.parseInt(parts[0].trim());
-                double length = Double.parseDouble(parts[1].trim());
-                searcher.docsEucLength.put(docID, length);
-            }
-            System.err.println("Finished reading from euclideanLength.txt");
+            searcher.docNorms = DocumentNorms.read(DocumentNorms.NORMS_FNAME);
         } catch (IOException e) {
-            System.out.println(e.getMessage());
+            System.err.println("Could not read euclidean lengths: " + e.getMessage());
         }
     }
 
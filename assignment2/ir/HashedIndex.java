@@ -7,6 +7,8 @@
 
 package ir;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -19,6 +21,12 @@ public class HashedIndex implements Index {
     /** The index as a hashtable. */
     public HashMap<String, PostingsList> index = new HashMap<String, PostingsList>();
 
+    /** The statistics of every term, updated as tokens are inserted. */
+    HashMap<String, TermStatistics> statistics = new HashMap<String, TermStatistics>();
+
+    /** The Euclidean length of every document, computed by cleanup. */
+    double[] docNorms;
+
     /**
      * Inserts this token in the hashtable.
      */
@@ -37,6 +45,7 @@ public class HashedIndex implements Index {
             PostingsList list = getPostings(token);
             list.addEntry(docID, offset);
         }
+        statistics.computeIfAbsent(token, k -> new TermStatistics()).add(docID);
     }
 
     /**
@@ -51,14 +60,29 @@ public class HashedIndex implements Index {
         return index.get(token);
     }
 
+    /**
+     * Returns the statistics of a term, or null if the term is not in the index.
+     */
+    public TermStatistics getTermStatistics(String token) {
+        return statistics.get(token);
+    }
+
     public Map<String, PostingsList> getIndex() {
         return this.index;
     }
 
     /**
-     * No need for cleanup in a HashedIndex.
+     * Computes the Euclidean lengths of the documents from the finished
+     * index and stores them on disk.
      */
     public void cleanup() {
+        int numDocIDs = docNames.isEmpty() ? 0 : Collections.max(docNames.keySet()) + 1;
+        docNorms = DocumentNorms.compute(index, docNames.size(), numDocIDs);
+        try {
+            DocumentNorms.write(DocumentNorms.NORMS_FNAME, docNorms);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     public int getCollectionSize() {
@@ -31,5 +31,11 @@ public interface Index {
     /** This method is called on exit. */
     public void cleanup();
 
+    /** Returns the statistics of a term, or null if the term is not in the index. */
+    public default TermStatistics getTermStatistics( String token ) {
+        PostingsList list = getPostings( token );
+        return list == null ? null : TermStatistics.of( list );
+    }
+
 }
 
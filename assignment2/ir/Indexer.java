@@ -29,12 +29,6 @@ public class Indexer {
     /** The patterns matching non-standard words (e-mail addresses, etc.) */
     String patterns_file;
 
-    /** Store the frequencies of tokens to calculate euclidean length */
-    ArrayList<HashMap<String, Integer>> termFrequency = new ArrayList<>();
-
-    /** Store the number of documents that contain a term in corpus */
-    Map<String, Integer> documentFrequency = new HashMap<>();
-
     /* ----------------------------------------------- */
 
     /** Constructor */
@@ -77,7 +71,6 @@ public class Indexer {
                         while (tok.hasMoreTokens()) {
                             String token = tok.nextToken();
                             insertIntoIndex(docID, token, offset++);
-                            documentFrequency.merge(token, 1, Integer::sum);
                         }
                         index.docNames.put(docID, f.getPath());
                         index.docLengths.put(docID, offset);
@@ -35,8 +35,8 @@ public class Searcher {
     /** Stores pageRank scores of docs */
     Map<String, Double> pagedRankProb = new HashMap<>();
 
-    /** Stores euclidean length of docs */
-    HashMap<Integer, Double> docsEucLength = new HashMap<>();
+    /** Stores euclidean length of docs, indexed by docID */
+    double[] docNorms;
 
     /** Constructor */
     public Searcher(Index index, KGramIndex kgIndex) {
@@ -69,7 +69,7 @@ public class Searcher {
                 if (pagedRankProb.isEmpty())
                     readPagedRank();
                 if (rankingType == rankingType.TF_IDF)
-                    searchResults = rankedTfIdf(query.queryterm);
+                    searchResults = rankedTfIdf(query.queryterm, normType);
 
                 else if (rankingType == rankingType.PAGERANK)
                     searchResults = rankedPageRank(query.queryterm);
@@ -212,22 +212,30 @@ public class Searcher {
         return answer;
     }
 
-    private PostingsList rankedTfIdf(List<Query.QueryTerm> queryTerms) {
+    private PostingsList rankedTfIdf(List<Query.QueryTerm> queryTerms, NormalizationType normType) {
         // Create empty dictionary to hold document scores
         Map<Integer, Double> scores = new HashMap<>();
 
+        // The postings of every query term, retrieved once
+        List<PostingsList> termDocuments = new ArrayList<>();
+
         // Loop through all search query terms
         for (Query.QueryTerm queryTerm : queryTerms) {
             String term = queryTerm.term;
 
             // Retrieve documents containing the search term
             PostingsList allDocuments = index.getPostings(term);
+            termDocuments.add(allDocuments);
+
+            // The idf only depends on the term, so look up its statistics once
+            TermStatistics stats = index.getTermStatistics(term);
+            double idf = idf(stats);
 
             // Loop through all retrieved documents
             for (PostingsEntry document : allDocuments.getEntries()) {
                 // Calculate the score for the document for the current query term
-                double score = tfidf(document, term);
-                // double score = tfidfWithEuclidean(document, term);
+                double score = tfidf(document, idf);
+                // double score = tfidfWithEuclidean(document, stats);
 
                 // Accumulate the score for the document
                 scores.merge(document.docID, score, Double::sum);
@@ -241,15 +249,10 @@ public class Searcher {
         PostingsList results = new PostingsList();
 
         // Add all documents from scores to the results list
-        for (Query.QueryTerm queryTerm : queryTerms) {
-            String term = queryTerm.term;
-            // Retrieve documents containing the search term
-            PostingsList allDocuments = index.getPostings(term);
-
+        for (PostingsList allDocuments : termDocuments) {
             for (PostingsEntry document : allDocuments.getEntries()) {
                 if (!uniqueDocs.contains(document.docID)) {
-                    // document.score = scores.get(document.docID);         // TODO: uncomment for euclidean length normalization
-                    document.score = scores.getOrDefault(document.docID,0.0) / index.docLengths.get(document.docID);
+                    document.score = scores.getOrDefault(document.docID,0.0) / docLength(document.docID, normType);
                     results.getEntries().add(document);
                     uniqueDocs.add(document.docID); // Add document to the set
                 }
@@ -261,34 +264,61 @@ public class Searcher {
     }
 
     /**
-     * Calcualte the tfidf score of a document given a search term
+     * Calculate the idf of a term from its statistics
      * 
-     * @param entry
-     * @param term
+     * @param stats
      * @return
      */
-    public double tfidf(PostingsEntry entry, String term) {
-        int termFrequency = entry.offset.size();
+    public double idf(TermStatistics stats) {
         int collectionSize = index.docNames.size();
-        int documentFrequency = index.getPostings(term).size();
+        int documentFrequency = stats.df();
+
+        return Math.log(collectionSize / documentFrequency);
+    }
 
-        double idf = Math.log(collectionSize / documentFrequency);
+    /**
+     * Calcualte the tfidf score of a document given the idf of a search term
+     * 
+     * @param entry
+     * @param idf
+     * @return
+     */
+    public double tfidf(PostingsEntry entry, double idf) {
+        int termFrequency = entry.offset.size();
         return termFrequency * idf;
     }
 
+    /**
+     * Length of a document used for normalization: its Euclidean length if
+     * it is asked for and known, and otherwise its number of words. The
+     * Euclidean length is 0 when all terms of the document occur in every
+     * document (idf 0), and then the number of words is used as well
+     * 
+     * @param docID
+     * @param normType
+     * @return
+     */
+    private double docLength(int docID, NormalizationType normType) {
+        if (normType == NormalizationType.EUCLIDEAN && docNorms != null && docID < docNorms.length
+                && docNorms[docID] > 0) {
+            return docNorms[docID];
+        }
+        return index.docLengths.get(docID);
+    }
+
     /***
      * Calculate the tfidf score of a document with euclidean length
-     * given a search term
+     * given the statistics of a search term
      * 
      * @param entry
-     * @param term
+     * @param stats
      * @return
      */
-    public double tfidfWithEuclidean(PostingsEntry entry, String term) {
+    public double tfidfWithEuclidean(PostingsEntry entry, TermStatistics stats) {
         int termFrequency = entry.offset.size();
         int collectionSize = index.docNames.size();
-        int documentFrequency = index.getPostings(term).size();
-        double eucLength = docsEucLength.get(entry.docID);
+        int documentFrequency = stats.df();
+        double eucLength = docLength(entry.docID, NormalizationType.EUCLIDEAN);
 
         double idf = (Math.log((double) collectionSize / (double) documentFrequency));
 
@@ -343,18 +373,25 @@ public class Searcher {
     public PostingsList combinedPagedRank(List<Query.QueryTerm> queryTerms) {
         // Create empty dictionary to hold document scores
         Map<Integer, Double> scores = new HashMap<>();
+
+        // The postings of every query term, retrieved once
+        List<PostingsList> termDocuments = new ArrayList<>();
+
         // Loop through all search query terms
         for (Query.QueryTerm queryTerm : queryTerms) {
             String term = queryTerm.term;
 
             // Retrieve documents containing the search term
             PostingsList allDocuments = index.getPostings(term);
+            termDocuments.add(allDocuments);
+            TermStatistics stats = index.getTermStatistics(term);
+            double idf = idf(stats);
 
             // Loop through all retrieved documents
             for (PostingsEntry document : allDocuments.getEntries()) {
                 // Calculate the score for the document for the current query term
-                double score = tfidf(document, term);
-                // double score = tfidfWithEuclidean(document, term);
+                double score = tfidf(document, idf);
+                // double score = tfidfWithEuclidean(document, stats);
 
                 // Accumulate the score for the document
                 scores.merge(document.docID, score, Double::sum);
@@ -368,11 +405,7 @@ public class Searcher {
 
         double weight = 0.005;
         // Add all documents from scores to the results list
-        for (Query.QueryTerm queryTerm : queryTerms) {
-            String term = queryTerm.term;
-            // Retrieve documents containing the search term
-            PostingsList allDocuments = index.getPostings(term);
-
+        for (PostingsList allDocuments : termDocuments) {
             for (PostingsEntry document : allDocuments.getEntries()) {
                 if (!uniqueDocs.contains(document.docID)) {
                     double tdfScore = scores.get(document.docID);
@@ -0,0 +1,77 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+/**
+ * Statistics of one term, kept next to its postings list so that ranking
+ * can look them up once per query term.
+ */
+public class TermStatistics {
+
+    /** Number of documents containing the term. */
+    int df = 0;
+
+    /** Number of occurrences of the term in the whole collection. */
+    long cf = 0;
+
+    /** The largest number of occurrences of the term in one document. */
+    int maxTf = 0;
+
+    /** The document being indexed and the number of occurrences in it so far. */
+    private int lastDocID = -1;
+    private int lastTf = 0;
+
+    /**
+     * Records an occurrence of the term in a document. The occurrences
+     * must be recorded in docID order.
+     */
+    public void add(int docID) {
+        if (docID != lastDocID) {
+            df++;
+            lastDocID = docID;
+            lastTf = 0;
+        }
+        cf++;
+        lastTf++;
+        maxTf = Math.max(maxTf, lastTf);
+    }
+
+    /**
+     * Computes the statistics of a postings list.
+     */
+    public static TermStatistics of(PostingsList list) {
+        TermStatistics stats = new TermStatistics();
+        for (PostingsEntry entry : list.getEntries()) {
+            int tf = entry.offset.size();
+            stats.df++;
+            stats.cf += tf;
+            stats.maxTf = Math.max(stats.maxTf, tf);
+        }
+        return stats;
+    }
+
+    /** Document frequency: the number of documents containing the term. */
+    public int df() {
+        return df;
+    }
+
+    /** Collection frequency: the number of occurrences in all documents. */
+    public long cf() {
+        return cf;
+    }
+
+    /** The largest term frequency of the term in any document. */
+    public int maxTf() {
+        return maxTf;
+    }
+
+    @Override
+    public String toString() {
+        return "df=" + df + " cf=" + cf + " maxTf=" + maxTf;
+    }
+}
@@ -3,4 +3,4 @@ if ! [ -d classes ];
 then
    mkdir classes
 fi
-javac -cp . -d classes ir/Engine.java ir/HashedIndex.java ir/HITSRanker.java ir/Index.java ir/Indexer.java ir/KGramIndex.java ir/KGramPostingsEntry.java ir/NormalizationType.java ir/PersistentHashedIndex.java ir/PostingsEntry.java ir/PostingsList.java ir/Query.java ir/QueryType.java ir/RankingType.java ir/Searcher.java ir/SearchGUI.java ir/SpellChecker.java ir/SpellingOptionsDialog.java ir/Tokenizer.java ir/TokenTest.java 
\ No newline at end of file
+javac -cp . -d classes ir/DocumentStore.java ir/Engine.java ir/ForwardIndex.java ir/HashedIndex.java ir/HITSRanker.java ir/Index.java ir/IntPostingsList.java ir/IntersectionBenchmark.java ir/Intersections.java ir/Indexer.java ir/IndexingBenchmark.java ir/KGramIndex.java ir/KGramPostingsEntry.java ir/NormalizationType.java ir/PersistentHashedIndex.java ir/PostingsEntry.java ir/PostingsList.java ir/ProximityBenchmark.java ir/Query.java ir/QueryPlan.java ir/QueryType.java ir/RankingType.java ir/Searcher.java ir/RoaringBitmap.java ir/SearchGUI.java ir/SnippetGenerator.java ir/SpellChecker.java ir/SpellingOptionsDialog.java ir/TermStatistics.java ir/Tokenizer.java ir/TokenTest.java 
\ No newline at end of file
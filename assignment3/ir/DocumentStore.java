@@ -0,0 +1,338 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compressed copy of the text of every indexed document, keyed by docID.
+ *
+ * The documents are concatenated, in the order they are indexed, into
+ * blocks of about BLOCK_SIZE bytes, and every block is compressed on its
+ * own. A document is never split over two blocks. In its block, the text of
+ * a document is followed by the byte offset in the text of each of its
+ * tokens, one int per token position, so that any part of the text can be
+ * found from token positions without decoding the rest. The store file
+ * holds the compressed blocks, then for every block its start in the file
+ * and its uncompressed size, then for every docID its block, its start in
+ * the block, the length of its text and its number of tokens (block -1 if
+ * there is no such document), and last the number of blocks, the number of
+ * docIDs and the start of the tables.
+ *
+ * Reading a document reads and decompresses only its block. The most
+ * recently used decompressed blocks are kept in memory, so documents
+ * indexed next to each other are read from disk once.
+ */
+public class DocumentStore {
+
+    /** The file holding the store. */
+    public static final String STORE_FNAME = "documents";
+
+    /** Target uncompressed size of a block. */
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    /** Number of decompressed blocks kept in memory. */
+    static final int CACHE_BLOCKS = 16;
+
+    final FileChannel channel;
+
+    /** Start in the file of every block, plus the end of the last block. */
+    final long[] blockStarts;
+    final int[] blockSizes;
+
+    /** Block, start in the block, text length and number of tokens of every docID. */
+    final int[] docBlocks;
+    final int[] docStarts;
+    final int[] docLengths;
+    final int[] docTokens;
+
+    /** The decompressed blocks, least recently used first. */
+    final LinkedHashMap<Integer, byte[]> cache = new LinkedHashMap<Integer, byte[]>(CACHE_BLOCKS, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+            return size() > CACHE_BLOCKS;
+        }
+    };
+
+    private DocumentStore(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer trailer = read(channel.size() - 16, 16);
+        int numBlocks = trailer.getInt();
+        int numDocIDs = trailer.getInt();
+        long tableStart = trailer.getLong();
+        ByteBuffer table = read(tableStart, numBlocks * 12 + numDocIDs * 16);
+        blockStarts = new long[numBlocks + 1];
+        blockSizes = new int[numBlocks];
+        for (int b = 0; b < numBlocks; b++) {
+            blockStarts[b] = table.getLong();
+            blockSizes[b] = table.getInt();
+        }
+        blockStarts[numBlocks] = tableStart;
+        docBlocks = new int[numDocIDs];
+        docStarts = new int[numDocIDs];
+        docLengths = new int[numDocIDs];
+        docTokens = new int[numDocIDs];
+        for (int docID = 0; docID < numDocIDs; docID++) {
+            docBlocks[docID] = table.getInt();
+            docStarts[docID] = table.getInt();
+            docLengths[docID] = table.getInt();
+            docTokens[docID] = table.getInt();
+        }
+    }
+
+    /**
+     * Opens the store in the directory <code>dir</code>. Returns null if
+     * there is none.
+     */
+    public static DocumentStore open(String dir) throws IOException {
+        File file = new File(dir, STORE_FNAME);
+        if (!file.exists()) {
+            return null;
+        }
+        return new DocumentStore(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    /**
+     * Returns the text of a document, or null if it is not in the store.
+     */
+    public String document(int docID) throws IOException {
+        if (!contains(docID)) {
+            return null;
+        }
+        return text(docID, 0, docLengths[docID]);
+    }
+
+    /** Returns true if the store holds the document. */
+    public boolean contains(int docID) {
+        return docID >= 0 && docID < docBlocks.length && docBlocks[docID] >= 0;
+    }
+
+    /** Length in bytes of the UTF-8 text of a stored document. */
+    public int textLength(int docID) {
+        return docLengths[docID];
+    }
+
+    /** Number of tokens of a stored document. */
+    public int numTokens(int docID) {
+        return docTokens[docID];
+    }
+
+    /**
+     * Returns the byte offset in the text of a stored document of the
+     * token at a position.
+     */
+    public int tokenStart(int docID, int position) throws IOException {
+        byte[] block = block(docBlocks[docID]);
+        int i = docStarts[docID] + docLengths[docID] + 4 * position;
+        return ((block[i] & 0xFF) << 24) | ((block[i + 1] & 0xFF) << 16) | ((block[i + 2] & 0xFF) << 8) | (block[i + 3] & 0xFF);
+    }
+
+    /**
+     * Returns the bytes <code>from</code> up to <code>to</code> of the text
+     * of a stored document, decoded.
+     */
+    public String text(int docID, int from, int to) throws IOException {
+        byte[] block = block(docBlocks[docID]);
+        return new String(block, docStarts[docID] + from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a decompressed block, from the cache if possible.
+     */
+    synchronized byte[] block(int b) throws IOException {
+        byte[] block = cache.get(b);
+        if (block == null) {
+            ByteBuffer compressed = read(blockStarts[b], (int) (blockStarts[b + 1] - blockStarts[b]));
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed.array(), 0, compressed.limit());
+                block = new byte[blockSizes[b]];
+                int n = 0;
+                while (n < block.length && !inflater.finished()) {
+                    n += inflater.inflate(block, n, block.length - n);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt block " + b + " in the document store", e);
+            } finally {
+                inflater.end();
+            }
+            cache.put(b, block);
+        }
+        return block;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes a store while documents are indexed. A block is compressed
+     * and written as soon as it is full; only the tables are kept in memory.
+     */
+    public static class Builder {
+
+        final File file;
+        final File tmpFile;
+        final DataOutputStream out;
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        /** The current, not yet compressed, block. */
+        byte[] block = new byte[BLOCK_SIZE];
+        int blockSize = 0;
+
+        byte[] compressed = new byte[BLOCK_SIZE];
+        long written = 0;
+
+        long[] blockStarts = new long[64];
+        int[] blockSizes = new int[64];
+        int numBlocks = 0;
+
+        int[] docBlocks = new int[1024];
+        int[] docStarts = new int[1024];
+        int[] docLengths = new int[1024];
+        int[] docTokens = new int[1024];
+        int numDocIDs = 0;
+
+        /** The character offsets of the tokens of the current document. */
+        int[] tokenStarts = new int[1024];
+        int numTokens = 0;
+
+        public Builder(String dir) throws IOException {
+            new File(dir).mkdirs();
+            file = new File(dir, STORE_FNAME);
+            tmpFile = new File(dir, STORE_FNAME + ".tmp");
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        }
+
+        /** Adds the character offset in the text of a token of the current document. */
+        public void addToken(int start) {
+            if (numTokens == tokenStarts.length) {
+                tokenStarts = Arrays.copyOf(tokenStarts, 2 * numTokens);
+            }
+            tokenStarts[numTokens++] = start;
+        }
+
+        /**
+         * Adds the text of a document, whose tokens have been added since the
+         * previous call, under <code>docID</code>.
+         */
+        public void endDocument(int docID, String text) throws IOException {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            int recordSize = bytes.length + 4 * numTokens;
+            if (blockSize > 0 && blockSize + recordSize > BLOCK_SIZE) {
+                flush();
+            }
+            if (blockSize + recordSize > block.length) {
+                block = Arrays.copyOf(block, blockSize + recordSize);
+            }
+            System.arraycopy(bytes, 0, block, blockSize, bytes.length);
+            // Turn the character offsets into byte offsets in the UTF-8 text.
+            // The tokens come in text order, so one pass over the text will do.
+            int c = 0;
+            int b = 0;
+            int p = blockSize + bytes.length;
+            for (int k = 0; k < numTokens; k++) {
+                for (; c < tokenStarts[k] && c < text.length(); c++) {
+                    char ch = text.charAt(c);
+                    b += ch < 0x80 ? 1 : ch < 0x800 || Character.isSurrogate(ch) ? 2 : 3;
+                }
+                int start = Math.min(b, bytes.length);
+                block[p++] = (byte) (start >>> 24);
+                block[p++] = (byte) (start >>> 16);
+                block[p++] = (byte) (start >>> 8);
+                block[p++] = (byte) start;
+            }
+            if (docID >= docBlocks.length) {
+                int length = docBlocks.length;
+                int newLength = Math.max(2 * length, docID + 1);
+                docBlocks = Arrays.copyOf(docBlocks, newLength);
+                docStarts = Arrays.copyOf(docStarts, newLength);
+                docLengths = Arrays.copyOf(docLengths, newLength);
+                docTokens = Arrays.copyOf(docTokens, newLength);
+            }
+            for (int d = numDocIDs; d < docID; d++) {
+                docBlocks[d] = -1;
+            }
+            docBlocks[docID] = numBlocks;
+            docStarts[docID] = blockSize;
+            docLengths[docID] = bytes.length;
+            docTokens[docID] = numTokens;
+            numDocIDs = Math.max(numDocIDs, docID + 1);
+            blockSize += recordSize;
+            numTokens = 0;
+        }
+
+        /** Compresses and writes the current block. */
+        private void flush() throws IOException {
+            if (numBlocks == blockStarts.length) {
+                blockStarts = Arrays.copyOf(blockStarts, 2 * numBlocks);
+                blockSizes = Arrays.copyOf(blockSizes, 2 * numBlocks);
+            }
+            blockStarts[numBlocks] = written;
+            blockSizes[numBlocks] = blockSize;
+            numBlocks++;
+            deflater.reset();
+            deflater.setInput(block, 0, blockSize);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(compressed);
+                out.write(compressed, 0, n);
+                written += n;
+            }
+            blockSize = 0;
+        }
+
+        /**
+         * Writes the last block and the tables, and moves the store in place.
+         */
+        public void close() throws IOException {
+            if (blockSize > 0) {
+                flush();
+            }
+            deflater.end();
+            long tableStart = written;
+            for (int b = 0; b < numBlocks; b++) {
+                out.writeLong(blockStarts[b]);
+                out.writeInt(blockSizes[b]);
+            }
+            for (int docID = 0; docID < numDocIDs; docID++) {
+                out.writeInt(docBlocks[docID]);
+                out.writeInt(docStarts[docID]);
+                out.writeInt(docLengths[docID]);
+                out.writeInt(docTokens[docID]);
+            }
+            out.writeInt(numBlocks);
+            out.writeInt(numDocIDs);
+            out.writeLong(tableStart);
+            out.close();
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -13,6 +13,7 @@ import java.util.List;
 import ir.Query.QueryTerm;
 
 import java.io.File;
+import java.io.IOException;
 
 /**
  * This is the main class for the search engine.
@@ -24,6 +25,15 @@ public class Engine {
     // Assignment 1.7: Comment the line above and uncomment the next line
     // Index index = new PersistentHashedIndex();
 
+    /** The forward index, holding the terms of every document. */
+    ForwardIndex forwardIndex;
+
+    /** The compressed copies of the indexed documents. */
+    DocumentStore documentStore;
+
+    /** Makes the snippets shown with the results. */
+    SnippetGenerator snippets;
+
     /** The indexer creating the search index. */
     Indexer indexer;
 
@@ -83,6 +93,12 @@ public class Engine {
             synchronized (indexLock) {
                 gui.displayInfoText("Indexing, please wait...");
                 long startTime = System.currentTimeMillis();
+                try {
+                    indexer.forwardIndex = new ForwardIndex.Builder(PersistentHashedIndex.INDEXDIR);
+                    indexer.documentStore = new DocumentStore.Builder(PersistentHashedIndex.INDEXDIR);
+                } catch (IOException e) {
+                    System.err.println("Warning: could not create the forward index or the document store.");
+                }
                 for (int i = 0; i < dirNames.size(); i++) {
                     File dokDir = new File(dirNames.get(i));
                     indexer.processFiles(dokDir, is_indexing);
@@ -90,12 +106,46 @@ public class Engine {
                 long elapsedTime = System.currentTimeMillis() - startTime;
                 gui.displayInfoText(String.format("Indexing done in %.1f seconds.", elapsedTime / 1000.0));
                 index.cleanup();
+                if (indexer.forwardIndex != null) {
+                    try {
+                        indexer.forwardIndex.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    indexer.forwardIndex = null;
+                }
+                if (indexer.documentStore != null) {
+                    try {
+                        indexer.documentStore.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    indexer.documentStore = null;
+                }
+                openIndexFiles();
             }
         } else {
+            openIndexFiles();
             gui.displayInfoText("Index is loaded from disk");
         }
     }
 
+    /**
+     * Maps the forward index and opens the document store written by the
+     * last indexing, if there are any.
+     */
+    private void openIndexFiles() {
+        try {
+            forwardIndex = ForwardIndex.open(PersistentHashedIndex.INDEXDIR);
+            documentStore = DocumentStore.open(PersistentHashedIndex.INDEXDIR);
+            if (documentStore != null) {
+                snippets = new SnippetGenerator(index, documentStore);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /* ----------------------------------------------- */
 
     /**
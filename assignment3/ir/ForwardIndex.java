@@ -0,0 +1,248 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A forward index: for every document, the terms it contains and how often.
+ *
+ * Every term gets a termID when it is first seen. The vector of a document
+ * is stored as its number of distinct terms followed by, in termID order,
+ * the gap to the previous termID and the term frequency, all as
+ * variable-byte integers. The vectors file holds the vectors in docID
+ * order, then a table with the start of every vector, then the position of
+ * the table. The terms file lists the terms in termID order.
+ *
+ * The vectors file is memory-mapped when the forward index is opened, so
+ * looking up the vector of a document decodes a few bytes without reading
+ * or tokenizing the document itself.
+ */
+public class ForwardIndex {
+
+    /** The file holding the document vectors. */
+    public static final String VECTORS_FNAME = "forward";
+
+    /** The file holding the terms in termID order. */
+    public static final String TERMS_FNAME = "forwardTerms";
+
+    /** The terms, indexed by termID. */
+    final String[] terms;
+
+    /** The vectors, followed by the table of vector starts. */
+    final MappedByteBuffer vectors;
+
+    /** Position of the table of vector starts, and the number of docIDs in it. */
+    final int tableStart;
+    final int numDocIDs;
+
+    private ForwardIndex(String[] terms, MappedByteBuffer vectors) {
+        this.terms = terms;
+        this.vectors = vectors;
+        tableStart = (int) vectors.getLong(vectors.capacity() - 8);
+        numDocIDs = (vectors.capacity() - 8 - tableStart) / 8 - 1;
+    }
+
+    /**
+     * Opens the forward index stored in the directory <code>dir</code>.
+     * Returns null if there is none.
+     */
+    public static ForwardIndex open(String dir) throws IOException {
+        File vectorsFile = new File(dir, VECTORS_FNAME);
+        File termsFile = new File(dir, TERMS_FNAME);
+        if (!vectorsFile.exists() || !termsFile.exists()) {
+            return null;
+        }
+        String[] terms;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(termsFile)))) {
+            terms = new String[in.readInt()];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = in.readUTF();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(vectorsFile.toPath(), StandardOpenOption.READ)) {
+            return new ForwardIndex(terms, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Returns the terms of a document and their frequencies, or an empty
+     * map if the document is unknown.
+     */
+    public HashMap<String, Integer> termVector(int docID) {
+        HashMap<String, Integer> vector = new HashMap<String, Integer>();
+        if (docID < 0 || docID >= numDocIDs) {
+            return vector;
+        }
+        ByteBuffer buf = vectors.duplicate();
+        int start = (int) buf.getLong(tableStart + 8 * docID);
+        int end = (int) buf.getLong(tableStart + 8 * (docID + 1));
+        if (start == end) {
+            return vector;
+        }
+        buf.position(start);
+        int size = readVInt(buf);
+        int termID = 0;
+        for (int i = 0; i < size; i++) {
+            termID += readVInt(buf);
+            vector.put(terms[termID], readVInt(buf));
+        }
+        return vector;
+    }
+
+    /** Number of distinct terms. */
+    public int numTerms() {
+        return terms.length;
+    }
+
+    /**
+     * Builds a forward index while documents are indexed. The vectors are
+     * written to disk as they are added; only the term dictionary and the
+     * table of vector starts are kept in memory.
+     */
+    public static class Builder {
+
+        final String dir;
+        final DataOutputStream out;
+        final HashMap<String, Integer> termIDs = new HashMap<String, Integer>();
+        final ArrayList<String> terms = new ArrayList<String>();
+
+        /** The start of the vector of every docID, -1 if there is none. */
+        long[] starts = new long[1024];
+
+        /** Number of bytes written so far. */
+        long written = 0;
+
+        /** The termIDs of the tokens of the current document. */
+        int[] tokens = new int[1024];
+        int numTokens = 0;
+
+        final ByteBuffer buf = ByteBuffer.allocate(1024);
+
+        public Builder(String dir) throws IOException {
+            this.dir = dir;
+            new File(dir).mkdirs();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, VECTORS_FNAME))));
+            Arrays.fill(starts, -1);
+        }
+
+        /** Adds a token of the current document. */
+        public void addToken(String token) {
+            Integer termID = termIDs.get(token);
+            if (termID == null) {
+                termID = terms.size();
+                termIDs.put(token, termID);
+                terms.add(token);
+            }
+            if (numTokens == tokens.length) {
+                tokens = Arrays.copyOf(tokens, 2 * tokens.length);
+            }
+            tokens[numTokens++] = termID;
+        }
+
+        /**
+         * Writes the vector of the current document, whose tokens have been
+         * added since the previous call, under <code>docID</code>.
+         */
+        public void endDocument(int docID) throws IOException {
+            Arrays.sort(tokens, 0, numTokens);
+            int distinct = 0;
+            for (int i = 0; i < numTokens; i++) {
+                if (i == 0 || tokens[i] != tokens[i - 1]) {
+                    distinct++;
+                }
+            }
+            if (docID >= starts.length) {
+                int length = starts.length;
+                starts = Arrays.copyOf(starts, Math.max(2 * length, docID + 1));
+                Arrays.fill(starts, length, starts.length, -1);
+            }
+            starts[docID] = written;
+            write(distinct);
+            int lastTermID = 0;
+            for (int i = 0; i < numTokens; ) {
+                int j = i;
+                while (j < numTokens && tokens[j] == tokens[i]) {
+                    j++;
+                }
+                write(tokens[i] - lastTermID);
+                write(j - i);
+                lastTermID = tokens[i];
+                i = j;
+            }
+            numTokens = 0;
+        }
+
+        private void write(int value) throws IOException {
+            buf.clear();
+            writeVInt(buf, value);
+            out.write(buf.array(), 0, buf.position());
+            written += buf.position();
+        }
+
+        /**
+         * Writes the table of vector starts and the terms, and closes the files.
+         */
+        public void close() throws IOException {
+            int numDocIDs = starts.length;
+            while (numDocIDs > 0 && starts[numDocIDs - 1] < 0) {
+                numDocIDs--;
+            }
+            long tableStart = written;
+            // A docID without a vector gets an empty range
+            long next = tableStart;
+            long[] table = new long[numDocIDs + 1];
+            table[numDocIDs] = tableStart;
+            for (int docID = numDocIDs - 1; docID >= 0; docID--) {
+                if (starts[docID] >= 0) {
+                    next = starts[docID];
+                }
+                table[docID] = starts[docID] >= 0 ? starts[docID] : next;
+            }
+            for (long start : table) {
+                out.writeLong(start);
+            }
+            out.writeLong(tableStart);
+            out.close();
+
+            try (DataOutputStream termsOut = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(new File(dir, TERMS_FNAME))))) {
+                termsOut.writeInt(terms.size());
+                for (String term : terms) {
+                    termsOut.writeUTF(term);
+                }
+            }
+        }
+    }
+
+    static void writeVInt(ByteBuffer buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    static int readVInt(ByteBuffer buf) {
+        byte b = buf.get();
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = buf.get();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+}
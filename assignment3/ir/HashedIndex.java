@@ -13,11 +13,29 @@ import java.util.Map;
 
 /**
  * Implements an inverted index as a Hashtable from words to PostingsLists.
+ *
+ * The postings are kept as IntPostingsLists, in primitive arrays, so that
+ * a position takes 4 bytes of heap instead of a boxed Integer and a
+ * reference. getPostings makes a PostingsList from them, for the code that
+ * needs boxed entries; the Searcher reads the IntPostingsLists directly.
+ *
+ * When indexing is done, the docIDs of every term in at least
+ * BITMAP_MIN_DF documents are also kept as a RoaringBitmap, for boolean
+ * queries over common words.
  */
 public class HashedIndex implements Index {
 
+    /** Terms in at least this many documents get a cached docID bitmap. */
+    static final int BITMAP_MIN_DF = 256;
+
     /** The index as a hashtable. */
-    public HashMap<String, PostingsList> index = new HashMap<String, PostingsList>();
+    public HashMap<String, IntPostingsList> index = new HashMap<String, IntPostingsList>();
+
+    /** The docID sets of the terms in at least BITMAP_MIN_DF documents. */
+    HashMap<String, RoaringBitmap> docIDSets = new HashMap<String, RoaringBitmap>();
+
+    /** The statistics of every term, updated as tokens are inserted. */
+    HashMap<String, TermStatistics> statistics = new HashMap<String, TermStatistics>();
 
     /**
      * Inserts this token in the hashtable.
@@ -30,13 +48,13 @@ public class HashedIndex implements Index {
         // For every token, there will be an associated postingList
         // One postinglist wll contain each and every docID where the token exists.
 
-        if (!index.containsKey(token)) {
-            PostingsList list = new PostingsList(docID, offset);
+        IntPostingsList list = index.get(token);
+        if (list == null) {
+            list = new IntPostingsList();
             index.put(token, list);
-        } else {
-            PostingsList list = getPostings(token);
-            list.addEntry(docID, offset);
         }
+        list.add(docID, offset);
+        statistics.computeIfAbsent(token, k -> new TermStatistics()).add(docID);
     }
 
     /**
@@ -48,17 +66,55 @@ public class HashedIndex implements Index {
         // REPLACE THE STATEMENT BELOW WITH YOUR CODE
         //
         // System.out.println("Size of index : " + index.size());
+        IntPostingsList list = index.get(token);
+        return list == null ? null : list.toPostingsList();
+    }
+
+    /**
+     * Returns the postings for a specific token, as stored, or null if the
+     * term is not in the index.
+     */
+    public IntPostingsList getIntPostings(String token) {
         return index.get(token);
     }
 
-    public Map<String, PostingsList> getIndex() {
+    /**
+     * Returns the docIDs of a term as a set, cached for common terms, or
+     * null if the term is not in the index.
+     */
+    public RoaringBitmap getDocIDSet(String token) {
+        RoaringBitmap set = docIDSets.get(token);
+        if (set == null) {
+            IntPostingsList list = index.get(token);
+            set = list == null ? null : RoaringBitmap.of(list);
+        }
+        return set;
+    }
+
+    /**
+     * Returns the statistics of a term, or null if the term is not in the index.
+     */
+    public TermStatistics getTermStatistics(String token) {
+        return statistics.get(token);
+    }
+
+    public Map<String, IntPostingsList> getIndex() {
         return this.index;
     }
 
     /**
-     * No need for cleanup in a HashedIndex.
+     * Frees the space left at the end of the postings arrays by indexing,
+     * and builds the docID sets of the common terms.
      */
     public void cleanup() {
+        docIDSets.clear();
+        for (Map.Entry<String, IntPostingsList> entry : index.entrySet()) {
+            IntPostingsList list = entry.getValue();
+            list.trimToSize();
+            if (list.size() >= BITMAP_MIN_DF) {
+                docIDSets.put(entry.getKey(), RoaringBitmap.of(list));
+            }
+        }
     }
 
     public int getCollectionSize() {
@@ -28,8 +28,26 @@ public interface Index {
     /** Returns the postings for a given term. */
     public PostingsList getPostings( String token );
 
+    /** Returns the postings for a given term in primitive arrays, or null if the term is not in the index. */
+    public default IntPostingsList getIntPostings( String token ) {
+        PostingsList list = getPostings( token );
+        return list == null ? null : IntPostingsList.of( list );
+    }
+
+    /** Returns the docIDs of a term as a set, or null if the term is not in the index. */
+    public default RoaringBitmap getDocIDSet( String token ) {
+        IntPostingsList list = getIntPostings( token );
+        return list == null ? null : RoaringBitmap.of( list );
+    }
+
     /** This method is called on exit. */
     public void cleanup();
 
+    /** Returns the statistics of a term, or null if the term is not in the index. */
+    public default TermStatistics getTermStatistics( String token ) {
+        PostingsList list = getPostings( token );
+        return list == null ? null : TermStatistics.of( list );
+    }
+
 }
 
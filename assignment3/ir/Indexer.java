@@ -10,6 +10,7 @@ package ir;
 import java.io.*;
 import java.util.*;
 import java.nio.charset.*;
+import java.nio.file.Files;
 
 /**
  * Processes a directory structure and indexes all PDF and text files.
@@ -28,6 +29,12 @@ public class Indexer {
     /** The patterns matching non-standard words (e-mail addresses, etc.) */
     String patterns_file;
 
+    /** Builds the forward index (the terms of every document), if not null. */
+    ForwardIndex.Builder forwardIndex;
+
+    /** Stores a compressed copy of every document, if not null. */
+    DocumentStore.Builder documentStore;
+
     /* ----------------------------------------------- */
 
     /** Constructor */
@@ -64,13 +71,22 @@ public class Indexer {
                     if (docID % 1000 == 0)
                         System.err.println("Indexed " + docID + " files");
                     try {
-                        Reader reader = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8);
+                        String text = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+                        Reader reader = new StringReader(text);
                         Tokenizer tok = new Tokenizer(reader, true, false, true, patterns_file);
                         int offset = 0;
                         while (tok.hasMoreTokens()) {
                             String token = tok.nextToken();
                             insertIntoIndex(docID, token, offset++);
+                            if (forwardIndex != null)
+                                forwardIndex.addToken(token);
+                            if (documentStore != null)
+                                documentStore.addToken(tok.tokenStart());
                         }
+                        if (forwardIndex != null)
+                            forwardIndex.endDocument(docID);
+                        if (documentStore != null)
+                            documentStore.endDocument(docID, text);
                         index.docNames.put(docID, f.getPath());
                         index.docLengths.put(docID, offset);
                         reader.close();
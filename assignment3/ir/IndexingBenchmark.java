@@ -0,0 +1,123 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Measures how indexing time grows with the number of tokens.
+ *
+ * A synthetic collection is indexed with words drawn from a Zipf
+ * distribution, so that a few words occur in nearly every document, like
+ * "the" in a real one. The collection is doubled a number of times, and for
+ * every size the time per token is printed for
+ *
+ *   scan      the old PostingsList.addEntry, which looked for the entry of
+ *             the document in the whole list,
+ *   append    PostingsList.addEntry, which adds to the last entry,
+ *   hashed    HashedIndex.insert, which adds to an IntPostingsList.
+ *
+ * With indexing linear in the number of tokens the time per token stays
+ * flat; the scan gets slower with every doubling. Before the first size is
+ * measured, it is indexed WARMUP times with every method, so that the
+ * times do not include compiling the code.
+ *
+ * Usage: java ir.IndexingBenchmark [documents] [doublings]
+ */
+public class IndexingBenchmark {
+
+    static final int DOC_LENGTH = 200;
+    static final int VOCABULARY = 20000;
+    static final int WARMUP = 3;
+
+    public static void main(String[] args) {
+        int numDocs = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int doublings = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        String[] words = new String[VOCABULARY];
+        double[] cumulative = new double[VOCABULARY];
+        double sum = 0;
+        for (int i = 0; i < VOCABULARY; i++) {
+            words[i] = "w" + i;
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+
+        int[] warmup = drawTokens(numDocs, 0, cumulative, sum);
+        for (int round = 0; round < WARMUP; round++) {
+            timePerToken(warmup, words, true);
+            timePerToken(warmup, words, false);
+            timeHashed(warmup, words);
+        }
+
+        System.out.println(String.format("%10s %10s %12s %12s %12s", "docs", "tokens", "scan ns", "append ns", "hashed ns"));
+        for (int round = 0; round < doublings; round++, numDocs *= 2) {
+            // Draw the collection once, so that all methods index the same tokens
+            int[] tokens = drawTokens(numDocs, round, cumulative, sum);
+            // The scan is quadratic, so leave it out once it gets too slow
+            double scan = round < 4 ? timePerToken(tokens, words, true) : Double.NaN;
+            double append = timePerToken(tokens, words, false);
+            double hashed = timeHashed(tokens, words);
+            System.out.println(String.format("%10d %10d %12.1f %12.1f %12.1f", numDocs, tokens.length, scan, append, hashed));
+        }
+    }
+
+    /**
+     * Draws the words of <code>numDocs</code> documents from the Zipf
+     * distribution given by its cumulative weights.
+     */
+    static int[] drawTokens(int numDocs, long seed, double[] cumulative, double sum) {
+        Random random = new Random(seed);
+        int[] tokens = new int[numDocs * DOC_LENGTH];
+        for (int i = 0; i < tokens.length; i++) {
+            int w = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            tokens[i] = Math.min(VOCABULARY - 1, w < 0 ? -w - 1 : w);
+        }
+        return tokens;
+    }
+
+    /**
+     * Indexes the tokens in a HashedIndex and returns the time per token in
+     * nanoseconds.
+     */
+    static double timeHashed(int[] tokens, String[] words) {
+        HashedIndex index = new HashedIndex();
+        long start = System.nanoTime();
+        for (int i = 0; i < tokens.length; i++) {
+            index.insert(words[tokens[i]], i / DOC_LENGTH, i % DOC_LENGTH);
+        }
+        return (double) (System.nanoTime() - start) / tokens.length;
+    }
+
+    /**
+     * Indexes the tokens in PostingsLists and returns the time per token in
+     * nanoseconds, either with the old look-up of the whole list or with
+     * addEntry.
+     */
+    static double timePerToken(int[] tokens, String[] words, boolean scan) {
+        HashMap<String, PostingsList> index = new HashMap<String, PostingsList>();
+        long start = System.nanoTime();
+        for (int i = 0; i < tokens.length; i++) {
+            int docID = i / DOC_LENGTH;
+            PostingsList list = index.computeIfAbsent(words[tokens[i]], k -> new PostingsList());
+            if (scan) {
+                PostingsEntry entry = list.findPostingsEntry(docID);
+                if (entry != null) {
+                    entry.offset.add(i % DOC_LENGTH);
+                } else {
+                    list.addEntry(new PostingsEntry(docID, i % DOC_LENGTH));
+                }
+            } else {
+                list.addEntry(docID, i % DOC_LENGTH);
+            }
+        }
+        return (double) (System.nanoTime() - start) / tokens.length;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.util.Arrays;
+
+/**
+ * A postings list stored in primitive arrays.
+ *
+ * Entry i has docID docIDs[i] and term frequency tfs[i], and its positions
+ * are positions[positionStarts[i]] up to positions[positionStarts[i] +
+ * tfs[i]], in increasing order. A position costs 4 bytes and an entry 12,
+ * against the objects, headers and boxed Integers of a PostingsList.
+ *
+ * Entries are appended in increasing docID order, as documents are indexed.
+ * A Cursor walks through the entries without creating any objects;
+ * <code>toPostingsList</code> makes a PostingsList for code that needs one.
+ */
+public class IntPostingsList {
+
+    int[] docIDs;
+    int[] tfs;
+    int[] positionStarts;
+    int[] positions;
+
+    /** Number of entries and number of positions. */
+    int size = 0;
+    int numPositions = 0;
+
+    public IntPostingsList() {
+        docIDs = new int[2];
+        tfs = new int[2];
+        positionStarts = new int[2];
+        positions = new int[2];
+    }
+
+    /**
+     * Adds an occurrence of the term at a position in a document. The
+     * document must be the last one added or have a larger docID.
+     */
+    public void add(int docID, int position) {
+        if (size == 0 || docIDs[size - 1] != docID) {
+            if (size == docIDs.length) {
+                int length = 2 * size;
+                docIDs = Arrays.copyOf(docIDs, length);
+                tfs = Arrays.copyOf(tfs, length);
+                positionStarts = Arrays.copyOf(positionStarts, length);
+            }
+            docIDs[size] = docID;
+            tfs[size] = 0;
+            positionStarts[size] = numPositions;
+            size++;
+        }
+        if (numPositions == positions.length) {
+            positions = Arrays.copyOf(positions, 2 * numPositions);
+        }
+        positions[numPositions++] = position;
+        tfs[size - 1]++;
+    }
+
+    /** Frees the unused space at the end of the arrays. */
+    public void trimToSize() {
+        docIDs = Arrays.copyOf(docIDs, size);
+        tfs = Arrays.copyOf(tfs, size);
+        positionStarts = Arrays.copyOf(positionStarts, size);
+        positions = Arrays.copyOf(positions, numPositions);
+    }
+
+    /** Number of entries. */
+    public int size() {
+        return size;
+    }
+
+    public int docID(int i) {
+        return docIDs[i];
+    }
+
+    public int tf(int i) {
+        return tfs[i];
+    }
+
+    /** Returns the jth position of entry i. */
+    public int position(int i, int j) {
+        return positions[positionStarts[i] + j];
+    }
+
+    /** Returns true if entry i has the position. */
+    public boolean containsPosition(int i, int position) {
+        int start = positionStarts[i];
+        return Arrays.binarySearch(positions, start, start + tfs[i], position) >= 0;
+    }
+
+    /**
+     * Returns the index of the entry of a document, or -1 if the document
+     * is not in the list.
+     */
+    public int indexOf(int docID) {
+        int i = Arrays.binarySearch(docIDs, 0, size, docID);
+        return i >= 0 ? i : -1;
+    }
+
+    /** Size of the arrays in bytes. */
+    public long bytes() {
+        return 4L * (docIDs.length + tfs.length + positionStarts.length + positions.length);
+    }
+
+    /**
+     * Returns the list as a PostingsList, with one new PostingsEntry per
+     * entry.
+     */
+    public PostingsList toPostingsList() {
+        PostingsList list = new PostingsList();
+        list.getEntries().ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            PostingsEntry entry = new PostingsEntry(docIDs[i]);
+            entry.offset.ensureCapacity(tfs[i]);
+            for (int j = 0; j < tfs[i]; j++) {
+                entry.offset.add(position(i, j));
+            }
+            list.addEntry(entry);
+        }
+        return list;
+    }
+
+    /**
+     * Returns the documents of the list as a PostingsList, with one new
+     * PostingsEntry per entry but without the positions.
+     */
+    public PostingsList toDocIDList() {
+        PostingsList list = new PostingsList();
+        list.getEntries().ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            list.addEntry(new PostingsEntry(docIDs[i]));
+        }
+        return list;
+    }
+
+    /**
+     * Makes an IntPostingsList with the entries of a PostingsList sorted by
+     * docID.
+     */
+    public static IntPostingsList of(PostingsList list) {
+        IntPostingsList ints = new IntPostingsList();
+        for (PostingsEntry entry : list.getEntries()) {
+            for (int position : entry.offset) {
+                ints.add(entry.docID, position);
+            }
+        }
+        return ints;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Walks through the entries of the list in docID order. A new cursor is
+     * before the first entry, and <code>next</code> moves it to the next.
+     */
+    public class Cursor {
+
+        int i = -1;
+
+        /** Moves to the next entry. Returns false if there is none. */
+        public boolean next() {
+            return ++i < size;
+        }
+
+        /**
+         * Moves to the first entry with a docID at least <code>target</code>,
+         * if the current one is smaller. Returns false if there is none.
+         */
+        public boolean advance(int target) {
+            if (i < 0) {
+                i = 0;
+            }
+            while (i < size && docIDs[i] < target) {
+                i++;
+            }
+            return i < size;
+        }
+
+        /** Index of the current entry in the list. */
+        public int index() {
+            return i;
+        }
+
+        public int docID() {
+            return docIDs[i];
+        }
+
+        public int tf() {
+            return tfs[i];
+        }
+
+        /** Returns the jth position of the current entry. */
+        public int position(int j) {
+            return positions[positionStarts[i] + j];
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the intersection kernels of Intersections on pairs of postings
+ * lists.
+ *
+ * Given directories, they are indexed and pairs of terms are drawn with
+ * document frequency ratios of about 1, 4, 8, 16, 64 and 256; without, docID
+ * lists are generated at random with those ratios. Every kernel intersects
+ * every pair of a ratio many times, after some rounds of warm-up, and the
+ * time per intersection is printed. All kernels must give the same answer.
+ *
+ * Usage: java ir.IntersectionBenchmark [directory ...]
+ */
+public class IntersectionBenchmark {
+
+    static final int[] RATIOS = { 1, 4, 8, 16, 64, 256 };
+    static final int PAIRS = 20;
+    static final int WARMUP = 5;
+    static final int ROUNDS = 20;
+
+    interface Kernel {
+        int intersect(int[] a, int na, int[] b, int nb, int[] out);
+    }
+
+    public static void main(String[] args) {
+        String[] names = { "merge", "blocks", "gallop", "chosen" };
+        Kernel[] kernels = {
+            Intersections::merge,
+            Intersections::blocks,
+            (a, na, b, nb, out) -> na <= nb ? Intersections.gallop(a, na, b, nb, out) : Intersections.gallop(b, nb, a, na, out),
+            Intersections::intersect
+        };
+
+        ArrayList<int[][]> pairsByRatio = args.length > 0 ? indexedPairs(args) : randomPairs();
+
+        System.out.print(String.format("%8s", "ratio"));
+        for (String name : names) {
+            System.out.print(String.format("%12s", name + " us"));
+        }
+        System.out.println();
+        for (int r = 0; r < RATIOS.length; r++) {
+            int[][] pairs = pairsByRatio.get(r);
+            if (pairs.length == 0) {
+                continue;
+            }
+            int[][] answers = new int[pairs.length / 2][];
+            System.out.print(String.format("%8d", RATIOS[r]));
+            for (int k = 0; k < kernels.length; k++) {
+                long time = 0;
+                for (int round = 0; round < WARMUP + ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    for (int p = 0; p < pairs.length; p += 2) {
+                        int[] a = pairs[p], b = pairs[p + 1];
+                        int[] out = new int[Math.min(a.length, b.length)];
+                        int n = kernels[k].intersect(a, a.length, b, b.length, out);
+                        if (round == 0) {
+                            int[] answer = Arrays.copyOf(out, n);
+                            if (k == 0) {
+                                answers[p / 2] = answer;
+                            } else if (!Arrays.equals(answer, answers[p / 2])) {
+                                throw new IllegalStateException(names[k] + " gives a wrong answer");
+                            }
+                        }
+                    }
+                    if (round >= WARMUP) {
+                        time += System.nanoTime() - start;
+                    }
+                }
+                System.out.print(String.format("%12.2f", time / 1000.0 / ROUNDS / (pairs.length / 2)));
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Indexes the directories and picks, for every ratio, pairs of terms
+     * whose document frequencies are about that ratio apart.
+     */
+    static ArrayList<int[][]> indexedPairs(String[] dirs) {
+        HashedIndex index = new HashedIndex();
+        Indexer indexer = new Indexer(index, null, null);
+        for (String dir : dirs) {
+            indexer.processFiles(new File(dir), true);
+        }
+        index.cleanup();
+        ArrayList<int[]> lists = new ArrayList<int[]>();
+        for (Map.Entry<String, IntPostingsList> entry : index.getIndex().entrySet()) {
+            IntPostingsList list = entry.getValue();
+            if (list.size() >= 2) {
+                lists.add(Arrays.copyOf(list.docIDs, list.size()));
+            }
+        }
+        lists.sort((a, b) -> Integer.compare(b.length, a.length));
+        Random random = new Random(1);
+        ArrayList<int[][]> pairsByRatio = new ArrayList<int[][]>();
+        for (int ratio : RATIOS) {
+            ArrayList<int[]> pairs = new ArrayList<int[]>();
+            // Long lists from the most common terms, short ones about ratio times shorter
+            for (int p = 0; p < PAIRS && p < lists.size(); p++) {
+                int[] longer = lists.get(random.nextInt(Math.max(1, lists.size() / 100)));
+                int wanted = Math.max(1, longer.length / ratio);
+                int i = 0;
+                while (i < lists.size() - 1 && lists.get(i).length > wanted) {
+                    i++;
+                }
+                int[] shorter = lists.get(Math.min(lists.size() - 1, i + random.nextInt(5)));
+                if (shorter.length * ratio > 2 * longer.length || longer.length > 2 * shorter.length * ratio) {
+                    continue;
+                }
+                pairs.add(shorter);
+                pairs.add(longer);
+            }
+            pairsByRatio.add(pairs.toArray(new int[0][]));
+        }
+        return pairsByRatio;
+    }
+
+    /** Makes random sorted docID lists with every ratio of lengths. */
+    static ArrayList<int[][]> randomPairs() {
+        Random random = new Random(1);
+        int numDocs = 1 << 20;
+        ArrayList<int[][]> pairsByRatio = new ArrayList<int[][]>();
+        for (int ratio : RATIOS) {
+            int[][] pairs = new int[2 * PAIRS][];
+            for (int p = 0; p < PAIRS; p++) {
+                int longLength = 100000 + random.nextInt(100000);
+                pairs[2 * p] = randomList(random, longLength / ratio, numDocs);
+                pairs[2 * p + 1] = randomList(random, longLength, numDocs);
+            }
+            pairsByRatio.add(pairs);
+        }
+        return pairsByRatio;
+    }
+
+    static int[] randomList(Random random, int length, int numDocs) {
+        int[] list = new int[length];
+        for (int i = 0; i < length; i++) {
+            list[i] = random.nextInt(numDocs);
+        }
+        Arrays.sort(list);
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            if (n == 0 || list[i] != list[n - 1]) {
+                list[n++] = list[i];
+            }
+        }
+        return Arrays.copyOf(list, n);
+    }
+}
@@ -22,6 +22,9 @@ public class KGramIndex {
     /** Index from k-grams to list of term ids that contain the k-gram */
     HashMap<String, List<KGramPostingsEntry>> index = new HashMap<String, List<KGramPostingsEntry>>();
 
+    /** The term ids of the k-grams as arrays, made when first intersected */
+    HashMap<String, int[]> idArrays = new HashMap<String, int[]>();
+
     /** The ID of the last processed term */
     int lastTermID = -1;
 
@@ -58,29 +61,46 @@ public class KGramIndex {
             return answer;
         }
 
-        ListIterator<KGramPostingsEntry> itr1 = p1.listIterator();
-        ListIterator<KGramPostingsEntry> itr2 = p2.listIterator();
-
-        while (itr1.hasNext() && itr2.hasNext()) {
-            KGramPostingsEntry pe1 = itr1.next();
-            KGramPostingsEntry pe2 = itr2.next();
-
-            while (true) {
-                if (pe1.tokenID == pe2.tokenID) {
-                    answer.add(new KGramPostingsEntry(pe1.tokenID));
-                    break;
-                } else if (pe1.tokenID < pe2.tokenID && itr1.hasNext()) {
-                    pe1 = itr1.next();
-                } else if (pe1.tokenID > pe2.tokenID && itr2.hasNext()) {
-                    pe2 = itr2.next();
-                } else {
-                    return answer; // No common elements left
-                }
-            }
+        for (int tokenID : Intersections.intersect(toIDs(p1), toIDs(p2))) {
+            answer.add(new KGramPostingsEntry(tokenID));
         }
         return answer;
     }
 
+    /**
+     * Get the term ids containing all the given k-grams, as a sorted array
+     */
+    public int[] intersectIDs(String[] kgrams) {
+        int[] answer = null;
+        for (String kgram : kgrams) {
+            int[] ids = getIDs(kgram);
+            answer = answer == null ? ids : Intersections.intersect(answer, ids);
+            if (answer.length == 0) {
+                break;
+            }
+        }
+        return answer == null ? new int[0] : answer;
+    }
+
+    /** Get the term ids of a k-gram as a sorted array */
+    int[] getIDs(String kgram) {
+        int[] ids = idArrays.get(kgram);
+        if (ids == null) {
+            List<KGramPostingsEntry> postings = index.get(kgram);
+            ids = postings == null ? new int[0] : toIDs(postings);
+            idArrays.put(kgram, ids);
+        }
+        return ids;
+    }
+
+    private static int[] toIDs(List<KGramPostingsEntry> postings) {
+        int[] ids = new int[postings.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = postings.get(i).tokenID;
+        }
+        return ids;
+    }
+
     /** Inserts all k-grams from a token into the index. */
     public void insert(String token) {
         //
@@ -104,8 +124,12 @@ public class KGramIndex {
                     index.put(kGramsHolder, new ArrayList<KGramPostingsEntry>());
                 }
 
-                if (!index.get(kGramsHolder).contains(kEntry)) {
-                    index.get(kGramsHolder).add(kEntry);
+                // Term ids are generated in increasing order, so a k-gram
+                // occurring twice in the term has it as its last entry
+                List<KGramPostingsEntry> postings = index.get(kGramsHolder);
+                if (postings.isEmpty() || postings.get(postings.size() - 1).tokenID != tokenID) {
+                    postings.add(kEntry);
+                    idArrays.remove(kGramsHolder);
                 }
             }
         }
@@ -133,24 +157,17 @@ public class KGramIndex {
     }
 
     public void findKGrams(String[] kgrams) {
-        List<KGramPostingsEntry> answer = null;
-
         for (int i = 0; i < kgrams.length; i++) {
             if (kgrams[i].length() != getK()) {
                 System.out.println("K = " + getK() + "doesn't match with length of this input : " + kgrams[i]);
                 return;
             }
-
-            if (i == 0) {
-                answer = getPostings(kgrams[i]);
-            } else {
-                answer = intersect(answer, getPostings(kgrams[i]));
-            }
         }
-        if (answer == null) {
+        if (kgrams.length == 0 || (kgrams.length == 1 && getPostings(kgrams[0]) == null)) {
             System.out.println("No posting(s) found!");
         } else {
-            System.out.println("Found " + answer.size() + " postings(s) for " + Arrays.toString(kgrams));
+            int[] answer = intersectIDs(kgrams);
+            System.out.println("Found " + answer.length + " postings(s) for " + Arrays.toString(kgrams));
         }
     }
 
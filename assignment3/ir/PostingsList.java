@@ -32,12 +32,21 @@ public class PostingsList {
     /**
      * Insert a new entry to the list if the list already exists
      * 
+     * Documents are indexed in increasing docID order, so the entry to add
+     * the offset to, if there is one, is the last one, and adding takes
+     * constant time. Other docIDs are looked up in the whole list.
+     * 
      * @param docID
      * @param offset
      */
     public void addEntry(int docID, int offset) {
 
-        PostingsEntry entry = findPostingsEntry(docID);
+        PostingsEntry last = list.isEmpty() ? null : list.get(list.size() - 1);
+        if (last == null || last.docID < docID) {
+            list.add(new PostingsEntry(docID, offset));
+            return;
+        }
+        PostingsEntry entry = last.docID == docID ? last : findPostingsEntry(docID);
         if (entry != null) { // it already exists
             entry.offset.add(offset);
         } else {
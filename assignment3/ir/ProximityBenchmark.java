@@ -0,0 +1,111 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares the time of proximity queries with that of phrase queries over
+ * the same terms.
+ *
+ * The directories are indexed, and QUERIES sequences of two to four
+ * consecutive tokens are taken from random documents. Every sequence is
+ * run as a phrase query, as a proximity query whose distance is the span
+ * of the sequence, and as one with distance 10, timing the planning
+ * and evaluation in Searcher (but not the k-gram lookup of Searcher.search).
+ * The average time per query and the average number of matching documents
+ * are printed. Every document matching the phrase must also match both
+ * proximity queries.
+ *
+ * Usage: java ir.ProximityBenchmark directory ...
+ */
+public class ProximityBenchmark {
+
+    static final int QUERIES = 2000;
+    static final int WARMUP = 3;
+    static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java ir.ProximityBenchmark directory ...");
+            System.exit(1);
+        }
+        HashedIndex index = new HashedIndex();
+        Indexer indexer = new Indexer(index, null, null);
+        for (String dir : args) {
+            indexer.processFiles(new File(dir), true);
+        }
+        index.cleanup();
+        Searcher searcher = new Searcher(index, null);
+
+        // Take the queries from the documents, so that phrases do match
+        Random random = new Random(1);
+        ArrayList<Integer> docIDs = new ArrayList<Integer>(Index.docNames.keySet());
+        ArrayList<String> phrases = new ArrayList<String>();
+        ArrayList<Integer> lengths = new ArrayList<Integer>();
+        while (phrases.size() < QUERIES) {
+            String fileName = Index.docNames.get(docIDs.get(random.nextInt(docIDs.size())));
+            ArrayList<String> tokens = new ArrayList<String>();
+            try (InputStreamReader reader = new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8)) {
+                Tokenizer tok = new Tokenizer(reader, true, false, true, null);
+                while (tok.hasMoreTokens()) {
+                    tokens.add(tok.nextToken());
+                }
+            }
+            int length = 2 + random.nextInt(3);
+            if (tokens.size() <= length) {
+                continue;
+            }
+            int start = random.nextInt(tokens.size() - length);
+            phrases.add(String.join(" ", tokens.subList(start, start + length)));
+            lengths.add(length);
+        }
+
+        String[] names = { "phrase", "near/span", "near/10" };
+        long[] times = new long[names.length];
+        long[] matches = new long[names.length];
+        for (int round = 0; round < WARMUP + ROUNDS; round++) {
+            for (int q = 0; q < phrases.size(); q++) {
+                String[] queries = {
+                    phrases.get(q),
+                    phrases.get(q) + " near/" + (lengths.get(q) - 1),
+                    phrases.get(q) + " near/10"
+                };
+                int[] sizes = new int[queries.length];
+                for (int k = 0; k < queries.length; k++) {
+                    long start = System.nanoTime();
+                    PostingsList answer = k == 0
+                            ? searcher.phraseSearch(QueryPlan.of(new Query(queries[k]), QueryType.PHRASE_QUERY, index))
+                            : searcher.proximitySearch(QueryPlan.of(new Query(queries[k]), QueryType.PROXIMITY_QUERY, index));
+                    long time = System.nanoTime() - start;
+                    sizes[k] = answer.size();
+                    if (round >= WARMUP) {
+                        times[k] += time;
+                        matches[k] += sizes[k];
+                    }
+                }
+                if (sizes[1] < sizes[0] || sizes[2] < sizes[1]) {
+                    throw new IllegalStateException("Proximity query misses phrase matches: " + phrases.get(q));
+                }
+            }
+        }
+
+        long count = (long) ROUNDS * phrases.size();
+        System.out.println(String.format("%12s %12s %12s", "query", "us/query", "docs/query"));
+        for (int k = 0; k < names.length; k++) {
+            System.out.println(String.format("%12s %12.1f %12.1f", names[k], times[k] / 1000.0 / count,
+                    (double) matches[k] / count));
+        }
+    }
+}
@@ -130,6 +130,13 @@ public class Query {
         for(int i = 0; i < docIsRelevant.length; i++) {
             if(docIsRelevant[i]) {
                 PostingsEntry entry = results.get(i);
+                if(engine.forwardIndex != null) {
+                    // Every occurrence of a term adds beta/relevantDocs
+                    for(Map.Entry<String, Integer> term : engine.forwardIndex.termVector(entry.docID).entrySet()) {
+                        expandedQuery.merge(term.getKey(), term.getValue() * beta/relevantDocs, Double::sum);
+                    }
+                    continue;
+                }
                 String docName = engine.index.docNames.get(entry.docID);
                 ArrayList<String> wordsInDoc = extractDocWords(docName);
 
@@ -0,0 +1,151 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/**
+ * The order in which Searcher evaluates an intersection, phrase or
+ * proximity query, chosen from the document frequencies of its terms.
+ *
+ * The terms are intersected from the rarest to the most common, so the
+ * running result is small from the start, and evaluation stops as soon as
+ * it is empty. A phrase is matched from the positions of its rarest term
+ * (the anchor): the other terms are looked up at their offsets in the
+ * phrase relative to it. Terms excluded from an intersection query (with
+ * '-') are removed last.
+ *
+ * A proximity query asks for documents where all its (distinct) terms
+ * occur within k words of each other: at positions whose largest and
+ * smallest differ by at most k. So "near/1" asks for adjacent terms, in any
+ * order, and "near/0" only matches a single term. k is given by a query
+ * term "near/k", and is DEFAULT_DISTANCE if there is none.
+ *
+ * While the query is evaluated, the size of the running result after
+ * every step is recorded, and toString shows the steps with their
+ * document frequencies and sizes, to explain slow queries.
+ */
+public class QueryPlan {
+
+    /** Distance k of a proximity query without "near/k". */
+    static final int DEFAULT_DISTANCE = 10;
+
+    /** One term of the query. */
+    public static class Step {
+
+        final String term;
+
+        /** Position of the term in the phrase. */
+        final int offset;
+
+        /** Document frequency of the term, 0 if it is not in the index. */
+        final int df;
+
+        /** True if documents containing the term are excluded. */
+        final boolean excluded;
+
+        /** Size of the running result after this step, -1 if not evaluated. */
+        int resultSize = -1;
+
+        Step(String term, int offset, int df, boolean excluded) {
+            this.term = term;
+            this.offset = offset;
+            this.df = df;
+            this.excluded = excluded;
+        }
+
+        @Override
+        public String toString() {
+            String s = (excluded ? "-" : "") + term + "@" + offset + " df=" + df;
+            return resultSize < 0 ? s + " (skipped)" : s + " -> " + resultSize;
+        }
+    }
+
+    final QueryType queryType;
+
+    /** The terms in the order they are evaluated: rarest first, excluded terms last. */
+    final ArrayList<Step> steps = new ArrayList<Step>();
+
+    /** Largest distance in tokens between the terms of a proximity query. */
+    int distance = DEFAULT_DISTANCE;
+
+    /** Time taken to evaluate the plan, in milliseconds. */
+    long elapsedMillis = -1;
+
+    private QueryPlan(QueryType queryType) {
+        this.queryType = queryType;
+    }
+
+    /**
+     * Plans an intersection, phrase or proximity query over an index.
+     */
+    public static QueryPlan of(Query query, QueryType queryType, Index index) {
+        QueryPlan plan = new QueryPlan(queryType);
+        for (int i = 0; i < query.queryterm.size(); i++) {
+            String term = query.queryterm.get(i).term;
+            if (queryType == QueryType.PROXIMITY_QUERY) {
+                if (term.matches("(?i)near/[0-9]+")) {
+                    plan.distance = Integer.parseInt(term.substring(5));
+                    continue;
+                }
+                if (plan.contains(term)) {
+                    continue;
+                }
+            }
+            boolean excluded = queryType == QueryType.INTERSECTION_QUERY && term.length() > 1 && term.charAt(0) == '-';
+            if (excluded) {
+                term = term.substring(1);
+            }
+            TermStatistics stats = index.getTermStatistics(term);
+            plan.steps.add(new Step(term, i, stats == null ? 0 : stats.df(), excluded));
+        }
+        plan.steps.sort(Comparator.comparing((Step step) -> step.excluded).thenComparingInt(step -> step.df));
+        return plan;
+    }
+
+    private boolean contains(String term) {
+        for (Step step : steps) {
+            if (step.term.equals(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The rarest term, on which a phrase is anchored. */
+    public Step anchor() {
+        return steps.get(0);
+    }
+
+    /** Returns the steps, in the order they are evaluated. */
+    public ArrayList<Step> steps() {
+        return steps;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(queryType == QueryType.PHRASE_QUERY ? "PHRASE"
+                : queryType == QueryType.PROXIMITY_QUERY ? "NEAR/" + distance : "AND");
+        if (queryType == QueryType.PHRASE_QUERY && !steps.isEmpty()) {
+            sb.append(" anchor=").append(anchor().term);
+        }
+        sb.append(" [");
+        for (int i = 0; i < steps.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(steps.get(i));
+        }
+        sb.append("]");
+        if (elapsedMillis >= 0) {
+            sb.append(" in ").append(elapsedMillis).append(" ms");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of docIDs, in the style of Roaring bitmaps.
+ *
+ * The docIDs are split into chunks by their upper 16 bits. A chunk with at
+ * most ARRAY_MAX docIDs keeps the lower 16 bits of them in a sorted array;
+ * a fuller chunk keeps a bitmap of 65536 bits. AND, OR and AND NOT work
+ * chunk by chunk, and on two bitmaps 64 docIDs at a time with one
+ * operation on a long. The number of docIDs in a set is kept up to date,
+ * so it is known without listing the docIDs.
+ *
+ * Sets are never changed once built; the operations return new sets.
+ */
+public class RoaringBitmap {
+
+    /** Largest number of docIDs in a chunk kept as an array. */
+    static final int ARRAY_MAX = 4096;
+
+    /** Number of longs in the bitmap of a chunk. */
+    static final int BITMAP_WORDS = 1 << 10;
+
+    /** The upper 16 bits of the docIDs of each chunk, in increasing order. */
+    final char[] keys;
+    final Container[] containers;
+    final int size;
+
+    /** The docIDs of one chunk, either as a sorted array or as a bitmap. */
+    static final class Container {
+
+        /** The lower 16 bits of the docIDs, if this is an array chunk. */
+        final char[] values;
+
+        /** The bitmap, if this is a bitmap chunk. */
+        final long[] bits;
+
+        final int cardinality;
+
+        Container(char[] values, long[] bits, int cardinality) {
+            this.values = values;
+            this.bits = bits;
+            this.cardinality = cardinality;
+        }
+
+        boolean contains(char low) {
+            if (bits != null) {
+                return (bits[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        long[] toBits() {
+            if (bits != null) {
+                return bits;
+            }
+            long[] b = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                b[values[i] >>> 6] |= 1L << values[i];
+            }
+            return b;
+        }
+    }
+
+    private RoaringBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    /** Returns an empty set. */
+    public static RoaringBitmap empty() {
+        return new RoaringBitmap(new char[0], new Container[0], 0);
+    }
+
+    /**
+     * Makes the set of the docIDs <code>docIDs[0]</code> up to
+     * <code>docIDs[n-1]</code>, which must be in increasing order.
+     */
+    public static RoaringBitmap of(int[] docIDs, int n) {
+        Builder builder = new Builder();
+        for (int i = 0; i < n; ) {
+            int key = docIDs[i] >>> 16;
+            int j = i;
+            while (j < n && docIDs[j] >>> 16 == key) {
+                j++;
+            }
+            int count = j - i;
+            char[] values = new char[count];
+            for (int k = 0; k < count; k++) {
+                values[k] = (char) docIDs[i + k];
+            }
+            builder.add((char) key, makeContainer(values, count));
+            i = j;
+        }
+        return builder.build();
+    }
+
+    /** Makes the set of the docIDs of a postings list. */
+    public static RoaringBitmap of(IntPostingsList list) {
+        return of(list.docIDs, list.size());
+    }
+
+    /** Number of docIDs in the set. */
+    public int cardinality() {
+        return size;
+    }
+
+    public boolean contains(int docID) {
+        int i = Arrays.binarySearch(keys, (char) (docID >>> 16));
+        return i >= 0 && containers[i].contains((char) docID);
+    }
+
+    /** Returns the docIDs in increasing order. */
+    public int[] toArray() {
+        int[] docIDs = new int[size];
+        int n = 0;
+        for (int c = 0; c < keys.length; c++) {
+            int high = keys[c] << 16;
+            Container container = containers[c];
+            if (container.bits == null) {
+                for (int i = 0; i < container.cardinality; i++) {
+                    docIDs[n++] = high | container.values[i];
+                }
+            } else {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = container.bits[w];
+                    while (word != 0) {
+                        docIDs[n++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+        return docIDs;
+    }
+
+    /** Approximate size of the set in bytes. */
+    public long bytes() {
+        long bytes = 2L * keys.length;
+        for (Container container : containers) {
+            bytes += container.bits != null ? 8L * BITMAP_WORDS : 2L * container.values.length;
+        }
+        return bytes;
+    }
+
+    /** Returns the docIDs in both sets. */
+    public RoaringBitmap and(RoaringBitmap other) {
+        Builder builder = new Builder();
+        int i = 0, j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                builder.add(keys[i], and(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return builder.build();
+    }
+
+    /** Returns the docIDs in either set. */
+    public RoaringBitmap or(RoaringBitmap other) {
+        Builder builder = new Builder();
+        int i = 0, j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                builder.add(keys[i], containers[i]);
+                i++;
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                builder.add(other.keys[j], other.containers[j]);
+                j++;
+            } else {
+                builder.add(keys[i], or(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return builder.build();
+    }
+
+    /** Returns the docIDs in this set but not in the other. */
+    public RoaringBitmap andNot(RoaringBitmap other) {
+        Builder builder = new Builder();
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.keys.length && other.keys[j] == keys[i]) {
+                builder.add(keys[i], andNot(containers[i], other.containers[j]));
+            } else {
+                builder.add(keys[i], containers[i]);
+            }
+        }
+        return builder.build();
+    }
+
+    static Container and(Container a, Container b) {
+        if (a.bits != null && b.bits != null) {
+            long[] bits = new long[BITMAP_WORDS];
+            int cardinality = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                bits[w] = a.bits[w] & b.bits[w];
+                cardinality += Long.bitCount(bits[w]);
+            }
+            return makeContainer(bits, cardinality);
+        }
+        if (a.bits != null) {
+            Container swap = a;
+            a = b;
+            b = swap;
+        }
+        // a is an array chunk: keep those of its values that are in b
+        char[] values = new char[a.cardinality];
+        int n = 0;
+        if (b.bits != null) {
+            for (int i = 0; i < a.cardinality; i++) {
+                char v = a.values[i];
+                if ((b.bits[v >>> 6] & (1L << v)) != 0) {
+                    values[n++] = v;
+                }
+            }
+        } else {
+            for (int i = 0, j = 0; i < a.cardinality && j < b.cardinality; ) {
+                if (a.values[i] < b.values[j]) {
+                    i++;
+                } else if (a.values[i] > b.values[j]) {
+                    j++;
+                } else {
+                    values[n++] = a.values[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return makeContainer(values, n);
+    }
+
+    static Container or(Container a, Container b) {
+        if (a.bits == null && b.bits == null && a.cardinality + b.cardinality <= ARRAY_MAX) {
+            char[] values = new char[a.cardinality + b.cardinality];
+            int i = 0, j = 0, n = 0;
+            while (i < a.cardinality || j < b.cardinality) {
+                if (j == b.cardinality || (i < a.cardinality && a.values[i] < b.values[j])) {
+                    values[n++] = a.values[i++];
+                } else if (i == a.cardinality || a.values[i] > b.values[j]) {
+                    values[n++] = b.values[j++];
+                } else {
+                    values[n++] = a.values[i++];
+                    j++;
+                }
+            }
+            return makeContainer(values, n);
+        }
+        long[] bits = a.bits != null ? a.bits.clone() : a.toBits();
+        if (b.bits != null) {
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                bits[w] |= b.bits[w];
+            }
+        } else {
+            for (int i = 0; i < b.cardinality; i++) {
+                bits[b.values[i] >>> 6] |= 1L << b.values[i];
+            }
+        }
+        int cardinality = 0;
+        for (long word : bits) {
+            cardinality += Long.bitCount(word);
+        }
+        return makeContainer(bits, cardinality);
+    }
+
+    static Container andNot(Container a, Container b) {
+        if (a.bits != null) {
+            long[] bits = a.bits.clone();
+            if (b.bits != null) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    bits[w] &= ~b.bits[w];
+                }
+            } else {
+                for (int i = 0; i < b.cardinality; i++) {
+                    bits[b.values[i] >>> 6] &= ~(1L << b.values[i]);
+                }
+            }
+            int cardinality = 0;
+            for (long word : bits) {
+                cardinality += Long.bitCount(word);
+            }
+            return makeContainer(bits, cardinality);
+        }
+        char[] values = new char[a.cardinality];
+        int n = 0;
+        for (int i = 0; i < a.cardinality; i++) {
+            if (!b.contains(a.values[i])) {
+                values[n++] = a.values[i];
+            }
+        }
+        return makeContainer(values, n);
+    }
+
+    /** Makes a chunk of the first n sorted values, as a bitmap if there are many. */
+    static Container makeContainer(char[] values, int n) {
+        if (n > ARRAY_MAX) {
+            return new Container(null, new Container(values, null, n).toBits(), n);
+        }
+        return new Container(n == values.length ? values : Arrays.copyOf(values, n), null, n);
+    }
+
+    /** Makes a chunk of a bitmap, as an array if there are few values. */
+    static Container makeContainer(long[] bits, int cardinality) {
+        if (cardinality > ARRAY_MAX) {
+            return new Container(null, bits, cardinality);
+        }
+        char[] values = new char[cardinality];
+        int n = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                values[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return new Container(values, null, cardinality);
+    }
+
+    /** Collects the non-empty chunks of a new set, in key order. */
+    static final class Builder {
+
+        char[] keys = new char[4];
+        Container[] containers = new Container[4];
+        int n = 0;
+        int size = 0;
+
+        void add(char key, Container container) {
+            if (container.cardinality == 0) {
+                return;
+            }
+            if (n == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * n);
+                containers = Arrays.copyOf(containers, 2 * n);
+            }
+            keys[n] = key;
+            containers[n] = container;
+            n++;
+            size += container.cardinality;
+        }
+
+        RoaringBitmap build() {
+            return new RoaringBitmap(Arrays.copyOf(keys, n), Arrays.copyOf(containers, n), size);
+        }
+    }
+}
@@ -67,6 +67,7 @@ public class SearchGUI extends JFrame {
     JMenuItem quitItem = new JMenuItem( "Quit" );
     JRadioButtonMenuItem intersectionItem = new JRadioButtonMenuItem( "Intersection query" );
     JRadioButtonMenuItem phraseItem = new JRadioButtonMenuItem( "Phrase query" );
+    JRadioButtonMenuItem proximityItem = new JRadioButtonMenuItem( "Proximity query (near/k)" );
     JRadioButtonMenuItem rankedItem = new JRadioButtonMenuItem( "Ranked retrieval" );
     JRadioButtonMenuItem tfidfItem = new JRadioButtonMenuItem( "tf-idf" );
     JRadioButtonMenuItem pagerankItem = new JRadioButtonMenuItem( "PageRank" );
@@ -108,6 +109,7 @@ public class SearchGUI extends JFrame {
         fileMenu.add( quitItem );
         optionsMenu.add( intersectionItem );
         optionsMenu.add( phraseItem );
+        optionsMenu.add( proximityItem );
         optionsMenu.add( rankedItem );
         rankingMenu.add( tfidfItem );
         rankingMenu.add( pagerankItem );
@@ -116,6 +118,7 @@ public class SearchGUI extends JFrame {
         normalizationMenu.add(euclideanLengthItem);
         queries.add( intersectionItem );
         queries.add( phraseItem );
+        queries.add( proximityItem );
         queries.add( rankedItem );
         ranking.add( tfidfItem );
         ranking.add( pagerankItem );
@@ -231,6 +234,13 @@ public class SearchGUI extends JFrame {
             };
         phraseItem.addActionListener( setPhraseQuery );
 
+        Action setProximityQuery = new AbstractAction() {
+            public void actionPerformed( ActionEvent e ) {
+                queryType = QueryType.PROXIMITY_QUERY;
+            }
+            };
+        proximityItem.addActionListener( setProximityQuery );
+
         Action setRankedQuery = new AbstractAction() {
             public void actionPerformed( ActionEvent e ) {
                 queryType = QueryType.RANKED_QUERY;
@@ -315,6 +325,7 @@ public class SearchGUI extends JFrame {
 
             JLabel label = new JLabel(description);
             label.setFont( resultFont );
+            final int docID = results.get(i).docID;
 
             MouseAdapter showDocument = new MouseAdapter() {
                 public void mouseClicked(MouseEvent e) {
@@ -322,6 +333,28 @@ public class SearchGUI extends JFrame {
                     String contents = "Displaying contents of " + fileName + "\n" + MARKER + "\n";
                     String line;
 
+                    // Read the document from the document store if there is one,
+                    // which decompresses only the block holding it.
+                    String text = null;
+                    if (engine.documentStore != null) {
+                        try {
+                            text = engine.documentStore.document(docID);
+                        } catch (IOException exc) {
+                            exc.printStackTrace();
+                        }
+                    }
+                    if (text != null) {
+                        try (BufferedReader br = new BufferedReader(new StringReader(text))) {
+                            while ((line = br.readLine()) != null) {
+                                contents += line.trim() + "\n";
+                            }
+                        } catch (IOException exc) {
+                        }
+                        docTextView.setText(contents);
+                        docTextView.setCaretPosition(0);
+                        return;
+                    }
+
                     Queue<String> fqueue = new LinkedList<>();
 
                     for (int j = 0, sz = engine.dirNames.size(); j < sz; j++) {
@@ -368,6 +401,17 @@ public class SearchGUI extends JFrame {
             label.addMouseListener(showDocument);
             result.add(box[i]);
             result.add(label);
+            if (engine.snippets != null) {
+                try {
+                    String snippet = engine.snippets.snippet(docID, query);
+                    if (snippet != null) {
+                        result.add(Box.createRigidArea(new Dimension(10,0)));
+                        result.add(new JLabel(snippet));
+                    }
+                } catch (IOException exc) {
+                    exc.printStackTrace();
+                }
+            }
 
             resultWindow.add( result );
         }
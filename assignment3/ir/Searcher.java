@@ -10,8 +10,8 @@ package ir;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashMap;
@@ -34,6 +34,12 @@ public class Searcher {
 
     Map<String, Double> pagedRankProb = new HashMap<>();
 
+    /** The plan of the last intersection or phrase query, for logging */
+    QueryPlan lastPlan;
+
+    /** Plans of queries taking at least this long are logged */
+    static final long SLOW_QUERY_MILLIS = 100;
+
     /** Constructor */
     public Searcher(Index index, KGramIndex kgIndex) {
         this.index = index;
@@ -65,6 +71,10 @@ public class Searcher {
                 searchResults = simpleSearch(query, queryType);
                 break;
 
+            case PROXIMITY_QUERY:
+                searchResults = simpleSearch(query, queryType);
+                break;
+
             case RANKED_QUERY:
                 if (pagedRankProb.isEmpty())
                     readPagedRank(); 
@@ -90,155 +100,237 @@ public class Searcher {
     }
 
     private PostingsList simpleSearch(Query query, QueryType queryType) {
-        if (query.queryterm.size() < 2) { // empty or one term
-            return extractPostingList(query, 0);
+        if (query.queryterm.isEmpty()) {
+            return new PostingsList();
+        }
+        if (query.queryterm.size() == 1) {
+            IntPostingsList list = index.getIntPostings(query.queryterm.get(0).term);
+            return list == null ? null : list.toDocIDList();
+        }
+        QueryPlan plan = QueryPlan.of(query, queryType, index);
+        lastPlan = plan;
+        long startTime = System.currentTimeMillis();
+        PostingsList answer;
+        if (queryType == QueryType.INTERSECTION_QUERY) {
+            answer = booleanSearch(plan);
+        } else if (queryType == QueryType.PROXIMITY_QUERY) {
+            answer = proximitySearch(plan);
         } else {
-            PostingsList answer = new PostingsList();
-            for (int i = 0; i < query.queryterm.size(); i++) {
-                if (i == 0) {
-                    PostingsList list1 = extractPostingList(query, 0);
-                    PostingsList list2 = extractPostingList(query, 1);
-                    if (queryType == queryType.INTERSECTION_QUERY) {
-                        answer = intersect(list1, list2);
-                    } else if (queryType == queryType.PHRASE_QUERY) {
-                        answer = positionalIntersect(list1, list2);
-                    }
-                } else if (i == 1) {
-                    continue;
-                } else {
-                    PostingsList list = extractPostingList(query, i);
-                    if (queryType == queryType.INTERSECTION_QUERY) {
-                        answer = intersect(answer, list);
-                    } else if (queryType == queryType.PHRASE_QUERY) {
-                        answer = positionalIntersect(answer, list);
-                    }
-                }
-            }
-            return answer;
+            answer = phraseSearch(plan);
+        }
+        plan.elapsedMillis = System.currentTimeMillis() - startTime;
+        if (plan.elapsedMillis >= SLOW_QUERY_MILLIS) {
+            System.err.println("Slow query: " + plan);
         }
+        return answer;
     }
 
-    private PostingsList extractPostingList(Query query, int termIndex) {
-        return index.getPostings(query.queryterm.get(termIndex).term);
+    /**
+     * Answers an intersection query from the docID sets of its terms. A
+     * term starting with '-' excludes the documents containing the rest of
+     * the term.
+     */
+    private PostingsList booleanSearch(QueryPlan plan) {
+        PostingsList answer = new PostingsList();
+        for (int docID : docIDSet(plan).toArray()) {
+            answer.getEntries().add(new PostingsEntry(docID));
+        }
+        return answer;
     }
 
-    public PostingsList intersect(PostingsList pl1, PostingsList pl2) {
-        PostingsList answer = new PostingsList();
-        ListIterator<PostingsEntry> itr1 = pl1.getEntries().listIterator();
-        ListIterator<PostingsEntry> itr2 = pl2.getEntries().listIterator();
+    /**
+     * Returns the set of documents matching an intersection query: those
+     * containing all its terms and none of its terms starting with '-'.
+     * The number of matching documents is its cardinality.
+     */
+    public RoaringBitmap docIDSet(Query query) {
+        return docIDSet(QueryPlan.of(query, QueryType.INTERSECTION_QUERY, index));
+    }
 
-        while (itr1.hasNext() && itr2.hasNext()) {
-            PostingsEntry pe1 = itr1.next();
-            PostingsEntry pe2 = itr2.next();
+    /**
+     * Intersects the docID sets of the terms of a plan in its order, and
+     * stops as soon as the result is empty.
+     */
+    private RoaringBitmap docIDSet(QueryPlan plan) {
+        RoaringBitmap answer = null;
+        for (QueryPlan.Step step : plan.steps()) {
+            if (step.excluded) {
+                if (answer == null) {
+                    // Only excluded terms
+                    return RoaringBitmap.empty();
+                }
+                RoaringBitmap set = step.df == 0 ? null : index.getDocIDSet(step.term);
+                if (set != null) {
+                    answer = answer.andNot(set);
+                }
+            } else {
+                RoaringBitmap set = step.df == 0 ? null : index.getDocIDSet(step.term);
+                if (set == null) {
+                    step.resultSize = 0;
+                    return RoaringBitmap.empty();
+                }
+                answer = answer == null ? set : answer.and(set);
+            }
+            step.resultSize = answer.cardinality();
+            if (answer.cardinality() == 0) {
+                break;
+            }
+        }
+        return answer == null ? RoaringBitmap.empty() : answer;
+    }
 
-            while (true) {
-                if (pe1.docID == pe2.docID) {
-                    answer.getEntries().add(new PostingsEntry(pe1.docID));
-                    break;
-                } else if (pe1.docID < pe2.docID && itr1.hasNext()) {
-                    pe1 = itr1.next();
-                } else if (pe1.docID > pe2.docID && itr2.hasNext()) {
-                    pe2 = itr2.next();
-                } else {
-                    return answer; // No common elements left
+    /**
+     * Answers a phrase query. The documents containing all terms are found
+     * by intersecting their docIDs from the rarest term on, and in each of
+     * them the phrase is looked for at the positions of the rarest term.
+     * The answer holds, for every matching document, the positions of the
+     * last term of the phrase where it ends.
+     */
+    PostingsList phraseSearch(QueryPlan plan) {
+        PostingsList answer = new PostingsList();
+        List<QueryPlan.Step> steps = plan.steps();
+        IntPostingsList[] lists = new IntPostingsList[steps.size()];
+        int[] docIDs = commonDocIDs(plan, lists);
+        int numDocIDs = docIDs.length;
+
+        int last = steps.size() - 1;
+        int[] entries = new int[steps.size()];
+        QueryPlan.Step anchor = plan.anchor();
+        for (int d = 0; d < numDocIDs; d++) {
+            for (int s = 0; s < steps.size(); s++) {
+                entries[s] = lists[s].indexOf(docIDs[d]);
+            }
+            PostingsEntry entry = null;
+            for (int j = 0; j < lists[0].tf(entries[0]); j++) {
+                // The position where the phrase would start
+                int start = lists[0].position(entries[0], j) - anchor.offset;
+                if (start < 0) {
+                    continue;
+                }
+                boolean match = true;
+                for (int s = 1; s < steps.size() && match; s++) {
+                    match = lists[s].containsPosition(entries[s], start + steps.get(s).offset);
+                }
+                if (match) {
+                    if (entry == null) {
+                        entry = new PostingsEntry(docIDs[d], start + last);
+                        answer.addEntry(entry);
+                    } else {
+                        entry.offset.add(start + last);
+                    }
                 }
             }
         }
         return answer;
     }
 
-    private PostingsList positionalIntersect(PostingsList pl1, PostingsList pl2) {
+    /**
+     * Answers a proximity query: the documents where all terms occur within
+     * plan.distance tokens of each other. In each document containing all
+     * terms, one cursor per term walks through its positions. The cursors
+     * span a window from the smallest to the largest of their positions;
+     * if it is too wide, the cursor at the smallest position moves on, so
+     * every position is visited at most once. The answer holds, for every
+     * matching document, the start of the first window found.
+     */
+    PostingsList proximitySearch(QueryPlan plan) {
         PostingsList answer = new PostingsList();
-        ListIterator<PostingsEntry> itr1 = pl1.getEntries().listIterator();
-        ListIterator<PostingsEntry> itr2 = pl2.getEntries().listIterator();
-
-        // Check if both lists have elements
-        if (!itr1.hasNext() || !itr2.hasNext())
+        List<QueryPlan.Step> steps = plan.steps();
+        if (steps.isEmpty()) {
             return answer;
-
-        PostingsEntry itr1Value = itr1.next();
-        PostingsEntry itr2Value = itr2.next();
-
-        while (true) {
-            if (itr1Value.docID == itr2Value.docID) {
-                ArrayList<Integer> pp1 = itr1Value.offset;
-                ArrayList<Integer> pp2 = itr2Value.offset;
-                ListIterator<Integer> itrOffset1 = pp1.listIterator();
-                ListIterator<Integer> itrOffset2 = pp2.listIterator();
-
-                // Check if both offset lists have elements
-                if (!itrOffset1.hasNext() || !itrOffset2.hasNext())
-                    break;
-
-                Integer itrOffset1Value = itrOffset1.next();
-                Integer itrOffset2Value = itrOffset2.next();
-
-                while (true) {
-                    if (itrOffset2Value - itrOffset1Value == 1) {
-                        answer.addEntry(itr1Value.docID, itrOffset2Value);
-                        if (itrOffset1.hasNext())
-                            itrOffset1Value = itrOffset1.next();
-                        else
-                            break;
-                        if (itrOffset2.hasNext())
-                            itrOffset2Value = itrOffset2.next();
-                        else
-                            break;
-                    } else if (itrOffset2Value > itrOffset1Value) {
-                        if (itrOffset1.hasNext())
-                            itrOffset1Value = itrOffset1.next();
-                        else
-                            break;
-                    } else {
-                        if (itrOffset2.hasNext())
-                            itrOffset2Value = itrOffset2.next();
-                        else
-                            break;
+        }
+        IntPostingsList[] lists = new IntPostingsList[steps.size()];
+        int[] docIDs = commonDocIDs(plan, lists);
+
+        int[] entries = new int[steps.size()];
+        int[] cursors = new int[steps.size()];
+        for (int docID : docIDs) {
+            for (int s = 0; s < steps.size(); s++) {
+                entries[s] = lists[s].indexOf(docID);
+                cursors[s] = 0;
+            }
+            while (true) {
+                int first = 0;
+                int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+                for (int s = 0; s < steps.size(); s++) {
+                    int position = lists[s].position(entries[s], cursors[s]);
+                    if (position < min) {
+                        min = position;
+                        first = s;
                     }
+                    max = Math.max(max, position);
                 }
-                if (itr1.hasNext())
-                    itr1Value = itr1.next();
-                else
+                if (max - min <= plan.distance) {
+                    answer.addEntry(new PostingsEntry(docID, min));
                     break;
-
-                if (itr2.hasNext())
-                    itr2Value = itr2.next();
-                else
-                    break;
-            } else if (itr1Value.docID < itr2Value.docID) {
-                if (itr1.hasNext())
-                    itr1Value = itr1.next();
-                else
-                    break;
-            } else {
-                if (itr2.hasNext())
-                    itr2Value = itr2.next();
-                else
+                }
+                if (++cursors[first] == lists[first].tf(entries[first])) {
                     break;
+                }
             }
         }
         return answer;
     }
 
+    /**
+     * Looks up the postings of the terms of a plan into <code>lists</code>
+     * and returns the docIDs of the documents containing all of them,
+     * intersecting from the rarest term on and stopping as soon as no
+     * document is left.
+     */
+    private int[] commonDocIDs(QueryPlan plan, IntPostingsList[] lists) {
+        List<QueryPlan.Step> steps = plan.steps();
+        int[] docIDs = null;
+        int numDocIDs = 0;
+        for (int s = 0; s < steps.size(); s++) {
+            lists[s] = steps.get(s).df == 0 ? null : index.getIntPostings(steps.get(s).term);
+            if (lists[s] == null) {
+                steps.get(s).resultSize = 0;
+                return new int[0];
+            }
+            if (docIDs == null) {
+                docIDs = Arrays.copyOf(lists[s].docIDs, lists[s].size());
+                numDocIDs = docIDs.length;
+            } else {
+                int[] common = new int[numDocIDs];
+                numDocIDs = Intersections.intersect(docIDs, numDocIDs, lists[s].docIDs, lists[s].size(), common);
+                docIDs = common;
+            }
+            steps.get(s).resultSize = numDocIDs;
+            if (numDocIDs == 0) {
+                return new int[0];
+            }
+        }
+        return docIDs == null ? new int[0] : Arrays.copyOf(docIDs, numDocIDs);
+    }
+
     private PostingsList rankedTfIdf(List<Query.QueryTerm> queryTerms) {
         // Create empty dictionary to hold document scores
         Map<Integer, Double> scores = new HashMap<>();
 
+        // The postings of every query term, retrieved once
+        List<IntPostingsList> termDocuments = new ArrayList<>();
+
         // Loop through all search query terms
         for (Query.QueryTerm queryTerm : queryTerms) {
             String term = queryTerm.term;
             // Retrieve documents containing the search term
-            PostingsList allDocuments = index.getPostings(term);
+            IntPostingsList allDocuments = index.getIntPostings(term);
             if(allDocuments == null) {
                 continue;
             }
+            termDocuments.add(allDocuments);
+
+            // The idf only depends on the term, so look up its statistics once
+            double idf = idf(index.getTermStatistics(term));
+
             // Loop through all retrieved documents
-            for (PostingsEntry document : allDocuments.getEntries()) {
+            for (IntPostingsList.Cursor document = allDocuments.cursor(); document.next();) {
                 // Calculate the score for the document for the current query term
-                double score = tfidf(document, term);
+                double score = tfidf(document.tf(), idf);
 
                 // Accumulate the score for the document
-                scores.merge(document.docID, score, Double::sum);
+                scores.merge(document.docID(), score, Double::sum);
             }
         }
 
@@ -249,19 +341,12 @@ public class Searcher {
         PostingsList results = new PostingsList();
 
         // Add all documents from scores to the results list
-        for (Query.QueryTerm queryTerm : queryTerms) {
-            String term = queryTerm.term;
-            // Retrieve documents containing the search term
-            PostingsList allDocuments = index.getPostings(term);
-            
-            if(allDocuments == null) {
-                continue;
-            }
-            for (PostingsEntry document : allDocuments.getEntries()) {
-                if (!uniqueDocs.contains(document.docID)) {
+        for (IntPostingsList allDocuments : termDocuments) {
+            for (IntPostingsList.Cursor cursor = allDocuments.cursor(); cursor.next();) {
+                if (uniqueDocs.add(cursor.docID())) {
+                    PostingsEntry document = new PostingsEntry(cursor.docID());
                     document.score = scores.getOrDefault(document.docID, 0.0) / index.docLengths.get(document.docID);
                     results.getEntries().add(document);
-                    uniqueDocs.add(document.docID); // Add document to the set
                 }
             }
         }
@@ -270,30 +355,32 @@ public class Searcher {
         return results;
     }
 
-    public double tfidf(PostingsEntry entry, String term) {
-
-        int termFrequency = entry.offset.size();
+    /**
+     * Calculate the idf of a term from its statistics
+     */
+    public double idf(TermStatistics stats) {
         int collectionSize = index.docNames.size();
-        int documentFrequency = index.getPostings(term).size();
+        int documentFrequency = stats.df();
 
-        double idf = Math.log10(collectionSize / documentFrequency);
-        return termFrequency * idf;
+        return Math.log10(collectionSize / documentFrequency);
     }
 
-    public PostingsList rankedPageRank(List<Query.QueryTerm> queryTerms) {
-        for (Query.QueryTerm queryTerm : queryTerms) {
-            String term = queryTerm.term;
+    /**
+     * Calculate the tfidf score of a document given the idf of a search term
+     */
+    public double tfidf(PostingsEntry entry, double idf) {
+        return tfidf(entry.offset.size(), idf);
+    }
 
-            // Retrieve documents containing the search term
-            PostingsList allDocuments = index.getPostings(term);
+    /**
+     * Calculate the tfidf score of a document given its term frequency and
+     * the idf of a search term
+     */
+    public double tfidf(int termFrequency, double idf) {
+        return termFrequency * idf;
+    }
 
-            // Loop through all retrieved documents
-            for (PostingsEntry document : allDocuments.getEntries()) {
-                String docTitle = Index.docNames.get(document.docID);
-                docTitle = docTitle.substring(docTitle.lastIndexOf("\\") + 1);
-                document.score = pagedRankProb.get(docTitle);
-            }
-        }
+    public PostingsList rankedPageRank(List<Query.QueryTerm> queryTerms) {
         // Create a set to keep track of unique documents
         Set<Integer> uniqueDocs = new HashSet<>();
 
@@ -302,12 +389,19 @@ public class Searcher {
         for (Query.QueryTerm queryTerm : queryTerms) {
             String term = queryTerm.term;
             // Retrieve documents containing the search term
-            PostingsList allDocuments = index.getPostings(term);
+            IntPostingsList allDocuments = index.getIntPostings(term);
+            if(allDocuments == null) {
+                continue;
+            }
 
-            for (PostingsEntry document : allDocuments.getEntries()) {
-                if (!uniqueDocs.contains(document.docID)) {
+            // Every document gets its PageRank score, once
+            for (IntPostingsList.Cursor cursor = allDocuments.cursor(); cursor.next();) {
+                if (uniqueDocs.add(cursor.docID())) {
+                    PostingsEntry document = new PostingsEntry(cursor.docID());
+                    String docTitle = Index.docNames.get(document.docID);
+                    docTitle = docTitle.substring(docTitle.lastIndexOf("\\") + 1);
+                    document.score = pagedRankProb.getOrDefault(docTitle, 0.0);
                     results.getEntries().add(document);
-                    uniqueDocs.add(document.docID); // Add document to the set
                 }
             }
         }
@@ -318,22 +412,29 @@ public class Searcher {
     public PostingsList combinedPagedRank(List<Query.QueryTerm> queryTerms) {
         // Create empty dictionary to hold document scores
         Map<Integer, Double> scores = new HashMap<>();
+
+        // The postings of every query term, retrieved once
+        List<IntPostingsList> termDocuments = new ArrayList<>();
+
         // Loop through all search query terms
         for (Query.QueryTerm queryTerm : queryTerms) {
             String term = queryTerm.term;
 
             // Retrieve documents containing the search term
-            PostingsList allDocuments = index.getPostings(term);
+            IntPostingsList allDocuments = index.getIntPostings(term);
             if(allDocuments == null) {
                 continue;
             }
+            termDocuments.add(allDocuments);
+            double idf = idf(index.getTermStatistics(term));
+
             // Loop through all retrieved documents
-            for (PostingsEntry document : allDocuments.getEntries()) {
+            for (IntPostingsList.Cursor document = allDocuments.cursor(); document.next();) {
                 // Calculate the score for the document for the current query term
-                double score = tfidf(document, term);
+                double score = tfidf(document.tf(), idf);
 
                 // Accumulate the score for the document
-                scores.merge(document.docID, score, Double::sum);
+                scores.merge(document.docID(), score, Double::sum);
             }
         }
         // Create a set to keep track of unique documents
@@ -344,23 +445,16 @@ public class Searcher {
 
         double weight = 0.005;
         // Add all documents from scores to the results list
-        for (Query.QueryTerm queryTerm : queryTerms) {
-            String term = queryTerm.term;
-            // Retrieve documents containing the search term
-            PostingsList allDocuments = index.getPostings(term);
-            if(allDocuments == null) {
-                continue;
-            }
-
-            for (PostingsEntry document : allDocuments.getEntries()) {
-                if (!uniqueDocs.contains(document.docID)) {
+        for (IntPostingsList allDocuments : termDocuments) {
+            for (IntPostingsList.Cursor cursor = allDocuments.cursor(); cursor.next();) {
+                if (uniqueDocs.add(cursor.docID())) {
+                    PostingsEntry document = new PostingsEntry(cursor.docID());
                     double tdfScore = scores.getOrDefault(document.docID, 0.0) / index.docLengths.get(document.docID);
                     String docTitle = Index.docNames.get(document.docID);
                     docTitle = docTitle.substring(docTitle.lastIndexOf("\\") + 1);
                     double pageRankScore = pagedRankProb.getOrDefault(docTitle, 0.0);
                     document.score = (1 - weight) * pageRankScore + weight * tdfScore;
                     results.getEntries().add(document);
-                    uniqueDocs.add(document.docID); // Add document to the set
                 }
             }
         }
@@ -0,0 +1,191 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, KTH, 2018
+ */
+
+package ir;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Makes a snippet of a result document, with the query terms highlighted.
+ *
+ * The positions of the query terms in the document are taken from their
+ * postings lists, and the densest window of WINDOW_TOKENS positions (the
+ * one with most distinct query terms, then most hits) is chosen. The
+ * document store gives the byte offsets of the tokens in the window, so
+ * only that part of the text is decoded. At most MAX_TERMS query terms and
+ * MAX_HITS_PER_TERM positions per term are looked at, so the work per
+ * result does not grow with the length of the document.
+ */
+public class SnippetGenerator {
+
+    /** Length in tokens of the window of hits. */
+    static final int WINDOW_TOKENS = 20;
+
+    /** Number of tokens shown before and after the window. */
+    static final int CONTEXT_TOKENS = 6;
+
+    /** Longest snippet, in bytes of text, unless the hits alone are longer. */
+    static final int MAX_SNIPPET_BYTES = 400;
+
+    /** Number of query terms looked at (those with the highest weights). */
+    static final int MAX_TERMS = 16;
+
+    /** Number of positions looked at per query term. */
+    static final int MAX_HITS_PER_TERM = 256;
+
+    final Index index;
+    final DocumentStore store;
+
+    public SnippetGenerator(Index index, DocumentStore store) {
+        this.index = index;
+        this.store = store;
+    }
+
+    /**
+     * Returns a snippet of a document, as HTML with the query terms in
+     * bold, or null if the document is not stored or contains none of
+     * the query terms.
+     */
+    public String snippet(int docID, Query query) throws IOException {
+        if (!store.contains(docID)) {
+            return null;
+        }
+        ArrayList<Query.QueryTerm> queryTerms = new ArrayList<Query.QueryTerm>(query.queryterm);
+        queryTerms.sort((a, b) -> Double.compare(b.weight, a.weight));
+        ArrayList<String> terms = new ArrayList<String>();
+        HashSet<String> seen = new HashSet<String>();
+        for (Query.QueryTerm queryTerm : queryTerms) {
+            if (terms.size() < MAX_TERMS && seen.add(queryTerm.term)) {
+                terms.add(queryTerm.term);
+            }
+        }
+
+        // The hits, as position << 32 | term number, in position order
+        long[] hits = new long[terms.size() * MAX_HITS_PER_TERM];
+        int numHits = 0;
+        for (int t = 0; t < terms.size(); t++) {
+            IntPostingsList postings = index.getIntPostings(terms.get(t));
+            int entry = postings == null ? -1 : postings.indexOf(docID);
+            if (entry < 0) {
+                continue;
+            }
+            for (int i = 0; i < postings.tf(entry) && i < MAX_HITS_PER_TERM; i++) {
+                hits[numHits++] = ((long) postings.position(entry, i) << 32) | t;
+            }
+        }
+        if (numHits == 0) {
+            return null;
+        }
+        Arrays.sort(hits, 0, numHits);
+
+        // Slide a window over the hits and keep the densest one
+        int[] counts = new int[terms.size()];
+        int distinct = 0;
+        int bestFirst = 0, bestLast = 0, bestDistinct = 0, bestCount = 0;
+        for (int first = 0, last = 0; last < numHits; last++) {
+            if (counts[(int) hits[last]]++ == 0) {
+                distinct++;
+            }
+            while (position(hits[last]) - position(hits[first]) >= WINDOW_TOKENS) {
+                if (--counts[(int) hits[first++]] == 0) {
+                    distinct--;
+                }
+            }
+            int count = last - first + 1;
+            if (distinct > bestDistinct || (distinct == bestDistinct && count > bestCount)) {
+                bestFirst = first;
+                bestLast = last;
+                bestDistinct = distinct;
+                bestCount = count;
+            }
+        }
+
+        // Add context around the window, less of it if the text gets too long
+        int numTokens = store.numTokens(docID);
+        int firstPosition = position(hits[bestFirst]);
+        int lastPosition = position(hits[bestLast]);
+        int from = 0, to = 0;
+        for (int context = CONTEXT_TOKENS; context >= 0; context--) {
+            from = store.tokenStart(docID, Math.max(0, firstPosition - context));
+            int next = lastPosition + context + 1;
+            to = next < numTokens ? store.tokenStart(docID, next) : store.textLength(docID);
+            if (to - from <= MAX_SNIPPET_BYTES) {
+                break;
+            }
+        }
+
+        StringBuilder sb = new StringBuilder("<html>");
+        if (from > 0) {
+            sb.append("... ");
+        }
+        int done = from;
+        for (int h = bestFirst; h <= bestLast; h++) {
+            int start = store.tokenStart(docID, position(hits[h]));
+            int end = Math.min(to, start + utf8Length(terms.get((int) hits[h])));
+            if (start < done) {
+                continue;
+            }
+            appendEscaped(sb, store.text(docID, done, start));
+            sb.append("<b>");
+            appendEscaped(sb, store.text(docID, start, end));
+            sb.append("</b>");
+            done = end;
+        }
+        appendEscaped(sb, store.text(docID, done, to));
+        if (to < store.textLength(docID)) {
+            sb.append(" ...");
+        }
+        return sb.append("</html>").toString();
+    }
+
+    private static int position(long hit) {
+        return (int) (hit >>> 32);
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+        return length;
+    }
+
+    /**
+     * Appends text with HTML special characters escaped and runs of white
+     * space collapsed into one space.
+     */
+    private static void appendEscaped(StringBuilder sb, String text) {
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            if (c == '<') {
+                sb.append("&lt;");
+            } else if (c == '>') {
+                sb.append("&gt;");
+            } else if (c == '&') {
+                sb.append("&amp;");
+            } else {
+                sb.append(c);
+            }
+        }
+        if (space) {
+            sb.append(' ');
+        }
+    }
+}
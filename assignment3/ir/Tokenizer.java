@@ -68,6 +68,15 @@ public class Tokenizer {
     /** The next tokens to emit. */
     ArrayList<String> token_queue = new ArrayList<String>();
 
+    /** The character offsets in the text of the tokens in @code{token_queue}. */
+    ArrayList<Integer> start_queue = new ArrayList<Integer>();
+
+    /** The character offset in the text of @code{buf[0]}. */
+    int buf_start = 0;
+
+    /** The character offset in the text of the last token returned. */
+    int last_token_start = -1;
+
     /** @code{true} if we've started reading tokens. */
     boolean started_reading = false;
 
@@ -199,14 +208,29 @@ public class Tokenizer {
      */
     public String nextToken() throws IOException { 
         if ( token_queue.size() == 0 ) {
-            if ( readTokens() )
-                return token_queue.remove( 0 );
-            else
+            if ( !readTokens() )
                 return null;
         }
-        else {
-            return token_queue.remove( 0 );
-        }
+        last_token_start = start_queue.remove( 0 );
+        return token_queue.remove( 0 );
+    }
+
+
+    /**
+     *  @return the offset in the text of the first character of the
+     *  token last returned by @code{nextToken}.
+     */
+    public int tokenStart() {
+        return last_token_start;
+    }
+
+
+    /**
+     *  Adds a token starting at position @code{start} of the buffer to the queue.
+     */
+    private void enqueue( String token, int start ) {
+        token_queue.add( token );
+        start_queue.add( buf_start + start );
     }
 
 
@@ -246,11 +270,13 @@ public class Tokenizer {
                     // of the token we have read already into the 
                     // beginning of the buffer.
                     System.arraycopy( buf, token_start, buf, 0, BUFFER_LENGTH-token_start );
+                    buf_start += token_start;
                     refillBuffer( BUFFER_LENGTH-token_start );
                     ptr = BUFFER_LENGTH-token_start;
                     token_start = 0;
                 }
                 else {
+                    buf_start += BUFFER_LENGTH;
                     refillBuffer( 0 );
                     ptr = 0;
                 }
@@ -281,8 +307,8 @@ public class Tokenizer {
                     // The string contains a non-standard word. First check the prefix 
                     // before the matching substring, then add the non-standard word  
                     // to the token queue, then check the remainder of the string.
-                    addStandardTokensToQueue( s.substring(0, m.start() ));
-                    token_queue.add( m.group() );
+                    addStandardTokensToQueue( s.substring(0, m.start() ), token_start );
+                    enqueue( m.group(), token_start + m.start() );
                     token_start += m.end();
                     addTokensToQueue();
                     return true;
@@ -290,15 +316,16 @@ public class Tokenizer {
             }
         }
         // This string contains only standard words
-        return addStandardTokensToQueue( s );
+        return addStandardTokensToQueue( s, token_start );
     }
 
 
     /**
      *  Adds standard tokens (i.e. tokens not matching any regular
-     *  expression) to the queue.
+     *  expression) to the queue. The string @code{s} starts at position
+     *  @code{start} of the buffer.
      */
-    private boolean addStandardTokensToQueue( String s ) {
+    private boolean addStandardTokensToQueue( String s, int start ) {
         // This string s does not match any specific pattern.
         // Then split it, considering all punctuation symbols
         // to be separators.
@@ -310,12 +337,12 @@ public class Tokenizer {
                 // unless it is empty
                 String t = smallbuf.toString();
                 if ( t.length()>0 ) {
-                    token_queue.add( t );
+                    enqueue( t, start+i-t.length() );
                     smallbuf = new StringBuffer();
                     tokens_found = true;
                 }
                 if ( !remove_punctuation ) {
-                    token_queue.add( "" + s.charAt( i ));
+                    enqueue( "" + s.charAt( i ), start+i );
                     tokens_found = true;
                 }
             }
@@ -327,7 +354,7 @@ public class Tokenizer {
         // unless it is empty
         String t = smallbuf.toString();
         if ( t.length()>0 ) {
-            token_queue.add( t );
+            enqueue( t, start+s.length()-t.length() );
             tokens_found = true;
         }   
         return tokens_found;